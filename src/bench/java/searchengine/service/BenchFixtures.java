@@ -0,0 +1,58 @@
+package searchengine.service;
+
+import searchengine.config.IndexingConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Фикстуры бенчмарков: HTML-страницы из {@code src/bench/resources/fixtures} и сервисы, собранные без Spring.
+ *
+ * @author Tseliar Vladimir
+ */
+final class BenchFixtures {
+
+    /**
+     * Страницы корпуса: новость библиотеки, карточка товара, статья.
+     */
+    static final List<String> PAGES = List.of("library-news.html", "shop-product.html", "history-article.html");
+
+    private BenchFixtures() {
+    }
+
+    /**
+     * Загружает HTML-код страниц корпуса.
+     *
+     * @return {@link List}<{@link String}> HTML-код страниц в порядке {@link #PAGES}
+     */
+    static List<String> loadPages() {
+        List<String> result = new ArrayList<>(PAGES.size());
+        for (String name : PAGES) {
+            try (InputStream in = BenchFixtures.class.getResourceAsStream("/fixtures/" + name)) {
+                if (in == null) {
+                    throw new IllegalStateException("Не найдена фикстура " + name);
+                }
+                result.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Создаёт анализатор лемм с заданным размером кэша словоформ.
+     *
+     * @param lemmaCacheSize размер кэша ({@code 1} — практически без кэша)
+     * @return {@link LemmaFinder} анализатор
+     */
+    static LemmaFinder lemmaFinder(int lemmaCacheSize) {
+        IndexingConfig config = new IndexingConfig();
+        config.setLemmaCacheSize(lemmaCacheSize);
+        return new LemmaFinder(config, new MorphologyProvider(config));
+    }
+}
@@ -0,0 +1,199 @@
+package searchengine.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import searchengine.Application;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер скорости полной индексации: обход синтетического сайта {@link SyntheticSite} приложением целиком
+ * (конвейер обхода, {@link SiteIndexingTask}, запись лемм) во временную схему MySQL.
+ *
+ * <p>Параметры — системные свойства: {@code bench.pages}, {@code bench.fanout}, {@code bench.words} (сайт),
+ * {@code bench.db.url} (URL сервера MySQL без схемы), {@code bench.db.username}, {@code bench.db.password},
+ * {@code bench.timeout-seconds}, {@code bench.keep-db}, {@code bench.content-storage} (режим хранения HTML-кода
+ * {@code inline} или {@code compressed}). Схема {@code search_engine_bench_<время>} создаётся
+ * при запуске и удаляется после замера, если не задано {@code bench.keep-db=true}.</p>
+ *
+ * <p>Отчёт: страниц в секунду, вхождений лемм (строк {@code search_index}) в секунду, запросов к БД на страницу
+ * (через Hibernate и пакетной записи лемм отдельно), пиковый объём кучи и количество повторов записи после
+ * дедлоков, объём таблиц {@code page} и {@code page_content} и среднее время чтения HTML-кода страницы.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+public final class CrawlThroughputBenchmark {
+
+    private CrawlThroughputBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = Integer.getInteger("bench.pages", 2000);
+        int fanOut = Integer.getInteger("bench.fanout", 8);
+        int words = Integer.getInteger("bench.words", 600);
+        String dbUrl = System.getProperty("bench.db.url", "jdbc:mysql://localhost:3306/");
+        String dbUsername = System.getProperty("bench.db.username", "root");
+        String dbPassword = System.getProperty("bench.db.password", "");
+        long timeoutSeconds = Long.getLong("bench.timeout-seconds", 1800);
+        boolean keepDb = Boolean.getBoolean("bench.keep-db");
+        String contentStorage = System.getProperty("bench.content-storage", "compressed");
+        String schema = "search_engine_bench_" + System.currentTimeMillis();
+
+        try (SyntheticSite site = new SyntheticSite(pages, fanOut, words)) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                    .web(WebApplicationType.NONE)
+                    .run("--spring.datasource.url=" + dbUrl + schema + "?createDatabaseIfNotExist=true"
+                                    + "&useSSL=false&allowPublicKeyRetrieval=true&rewriteBatchedStatements=true",
+                            "--spring.datasource.username=" + dbUsername,
+                            "--spring.datasource.password=" + dbPassword,
+                            "--spring.jpa.properties.hibernate.generate_statistics=true",
+                            "--search-settings.engine=sql",
+                            "--indexing-settings.content-storage.mode=" + contentStorage,
+                            "--indexing-settings.sites[0].url=" + site.baseUrl(),
+                            "--indexing-settings.sites[0].name=Синтетический сайт");
+            try {
+                crawl(context, site, pages, fanOut, words, timeoutSeconds);
+                reportContentStorage(context, contentStorage);
+            } finally {
+                context.close();
+                if (!keepDb) {
+                    dropSchema(dbUrl, dbUsername, dbPassword, schema);
+                }
+            }
+        }
+    }
+
+    /**
+     * Запускает индексацию, дожидается её завершения и печатает отчёт.
+     *
+     * @param context {@link ConfigurableApplicationContext} контекст приложения
+     * @param site {@link SyntheticSite} сайт
+     * @param pages количество страниц сайта
+     * @param fanOut количество ссылок на дочерние страницы
+     * @param words количество слов на странице
+     * @param timeoutSeconds максимальная длительность обхода
+     * @throws InterruptedException если ожидание прервано
+     */
+    private static void crawl(ConfigurableApplicationContext context, SyntheticSite site, int pages, int fanOut,
+                              int words, long timeoutSeconds) throws InterruptedException {
+        IndexingService indexingService = context.getBean(IndexingService.class);
+        IndexingMetrics metrics = context.getBean(IndexingMetrics.class);
+        Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class)
+                .getStatistics();
+
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        statistics.clear();
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        indexingService.startIndexing();
+        while (indexingService.getIndexingInProgress().get()) {
+            if (System.nanoTime() > deadline) {
+                indexingService.stopIndexing();
+                System.out.println("Обход не завершился за " + timeoutSeconds + " с и остановлен");
+                break;
+            }
+            Thread.sleep(200);
+        }
+        double seconds = (System.nanoTime() - started) / 1_000_000_000d;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        long savedPages = context.getBean(PageRepository.class).count();
+        long lemmas = context.getBean(LemmaRepository.class).count();
+        long jpaStatements = statistics.getPrepareStatementCount();
+        long perPage = Math.max(1, savedPages);
+
+        System.out.printf("%nСайт: %d страниц, %d ссылок на странице, %d слов на странице, HTTP-запросов %d%n",
+                pages, fanOut, words, site.requests());
+        System.out.printf("Сохранено страниц: %d за %.1f с — %.1f страниц/с%n", savedPages, seconds, savedPages / seconds);
+        System.out.printf("Вхождений лемм (search_index): %d — %.0f в секунду; лемм в таблице lemma: %d%n",
+                metrics.indexRows(), metrics.indexRows() / seconds, lemmas);
+        System.out.printf("Запросов к БД на страницу: %.1f через Hibernate, %.2f пакетной записи лемм%n",
+                (double) jpaStatements / perPage, (double) metrics.statements() / perPage);
+        System.out.printf("Пиковый объём кучи (сумма пиков областей): %d МБ%n", peakHeap / (1024 * 1024));
+        System.out.printf("Повторов записи после дедлоков: %d%n", metrics.lockRetries());
+    }
+
+    /**
+     * Печатает объём таблиц с HTML-кодом страниц и время его чтения страницами выдачи по 20 страниц.
+     *
+     * @param context {@link ConfigurableApplicationContext} контекст приложения
+     * @param contentStorage {@link String} режим хранения HTML-кода
+     * @throws SQLException при ошибке запроса к {@code information_schema}
+     */
+    private static void reportContentStorage(ConfigurableApplicationContext context, String contentStorage)
+            throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection connection = context.getBean(DataSource.class).getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE TABLE page, page_content");
+            try (ResultSet rs = statement.executeQuery("SELECT TABLE_NAME, DATA_LENGTH FROM information_schema.TABLES "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME IN ('page', 'page_content')")) {
+                while (rs.next()) {
+                    System.out.printf("Объём таблицы %s (%s): %d КБ%n", rs.getString(1), contentStorage,
+                            rs.getLong(2) / 1024);
+                }
+            }
+            try (ResultSet rs = statement.executeQuery("SELECT id FROM page ORDER BY id LIMIT 2000")) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+
+        PageRepository pageRepository = context.getBean(PageRepository.class);
+        PageContentStore contentStore = context.getBean(PageContentStore.class);
+        long readNanos = 0;
+        long bytes = 0;
+        for (int from = 0; from < ids.size(); from += 20) {
+            List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + 20));
+            long started = System.nanoTime();
+            for (String html : contentStore.loadHtml(pageRepository.findAllById(batch)).values()) {
+                bytes += html.length();
+            }
+            readNanos += System.nanoTime() - started;
+        }
+        System.out.printf("Чтение HTML-кода (%s): %d страниц, %.0f мкс на страницу, %d КБ текста%n",
+                contentStorage, ids.size(), ids.isEmpty() ? 0d : readNanos / 1000d / ids.size(), bytes / 1024);
+    }
+
+    /**
+     * Удаляет временную схему замера.
+     *
+     * @param dbUrl {@link String} URL сервера MySQL без схемы
+     * @param username {@link String} пользователь
+     * @param password {@link String} пароль
+     * @param schema {@link String} имя схемы
+     * @throws SQLException при ошибке удаления
+     */
+    private static void dropSchema(String dbUrl, String username, String password, String schema) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(dbUrl, username, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS `" + schema + "`");
+        }
+    }
+}
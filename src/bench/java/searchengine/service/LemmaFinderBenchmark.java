@@ -0,0 +1,81 @@
+package searchengine.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лемматизация корпуса фикстур: HTML целиком, уже извлечённый текст и отдельные слова.
+ *
+ * <p>{@code lemmaCacheSize = 1} практически отключает кэш словоформ и измеряет разбор морфологией.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class LemmaFinderBenchmark {
+
+    @Param({"200000", "1"})
+    public int lemmaCacheSize;
+
+    private LemmaFinder lemmaFinder;
+    private List<String> pages;
+    private List<String> texts;
+    private String[] words;
+
+    @Setup
+    public void setUp() {
+        lemmaFinder = BenchFixtures.lemmaFinder(lemmaCacheSize);
+        pages = BenchFixtures.loadPages();
+        texts = new ArrayList<>(pages.size());
+        List<String> allWords = new ArrayList<>();
+        for (String page : pages) {
+            String text = lemmaFinder.cleanHtml(page);
+            texts.add(text);
+            for (String word : text.split("[^\\p{L}]+")) {
+                if (!word.isEmpty()) {
+                    allWords.add(word);
+                }
+            }
+        }
+        words = allWords.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void collectLemmas(Blackhole blackhole) {
+        for (String page : pages) {
+            blackhole.consume(lemmaFinder.collectLemmas(page));
+        }
+    }
+
+    @Benchmark
+    public void collectLemmasFromText(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(lemmaFinder.collectLemmasFromText(text));
+        }
+    }
+
+    @Benchmark
+    public void getLemmaForWord(Blackhole blackhole) {
+        for (String word : words) {
+            blackhole.consume(lemmaFinder.getLemmaForWord(word));
+        }
+    }
+}
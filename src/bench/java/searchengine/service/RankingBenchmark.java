@@ -0,0 +1,101 @@
+package searchengine.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ранжирование и постраничная выдача в памяти: отбор лучших страниц, объединение отборов по сайтам
+ * и страница выдачи из сохранённых результатов (как при попадании в кэш).
+ *
+ * <p>Релевантности генерируются с фиксированным seed и округляются, чтобы было много равных значений.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class RankingBenchmark {
+
+    private static final int SITES = 4;
+    private static final int LIMIT = 20;
+    private static final int DEPTH = 200;
+
+    @Param({"1000", "100000"})
+    public int hits;
+
+    @Param({"0", "180"})
+    public int offset;
+
+    private int[] siteIds;
+    private int[] pageIds;
+    private double[] absRelevance;
+    private SearchResultCache.RankedHits ranked;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        siteIds = new int[hits];
+        pageIds = new int[hits];
+        absRelevance = new double[hits];
+        for (int i = 0; i < hits; i++) {
+            siteIds[i] = 1 + i % SITES;
+            pageIds[i] = i + 1;
+            absRelevance[i] = Math.round(random.nextDouble() * 200) / 10d;
+        }
+        ranked = SearchResultCache.RankedHits.of(collect());
+    }
+
+    @Benchmark
+    public List<SearchHit> rankAndPage() {
+        return SearchResultCache.RankedHits.of(collect()).slice(offset, offset + LIMIT);
+    }
+
+    @Benchmark
+    public List<SearchHit> mergeSites() {
+        TopKCollector[] perSite = new TopKCollector[SITES];
+        for (int s = 0; s < SITES; s++) {
+            perSite[s] = new TopKCollector(capacity());
+        }
+        for (int i = 0; i < hits; i++) {
+            perSite[siteIds[i] - 1].offer(siteIds[i], pageIds[i], absRelevance[i]);
+        }
+        TopKCollector merged = new TopKCollector(capacity());
+        for (TopKCollector collector : perSite) {
+            merged.addAll(collector);
+        }
+        return SearchResultCache.RankedHits.of(merged).slice(offset, offset + LIMIT);
+    }
+
+    @Benchmark
+    public List<SearchHit> cachedPage() {
+        return ranked.slice(offset, offset + LIMIT);
+    }
+
+    private TopKCollector collect() {
+        TopKCollector collector = new TopKCollector(capacity());
+        for (int i = 0; i < hits; i++) {
+            collector.offer(siteIds[i], pageIds[i], absRelevance[i]);
+        }
+        return collector;
+    }
+
+    private int capacity() {
+        return Math.max(offset + LIMIT, DEPTH);
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import searchengine.config.SearchConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение сниппетов по текстам страниц корпуса фикстур и подсветка слов запроса.
+ *
+ * @author Tseliar Vladimir
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class SnippetBenchmark {
+
+    @Param({"печатные книги", "смартфон с большим экраном", "встреча с писателем в библиотеке"})
+    public String query;
+
+    private SnippetBuilder snippetBuilder;
+    private List<String> texts;
+    private List<String> snippets;
+    private QueryHighlighter highlighter;
+
+    @Setup
+    public void setUp() {
+        LemmaFinder lemmaFinder = BenchFixtures.lemmaFinder(200_000);
+        DocumentProcessor documentProcessor = new DocumentProcessor(lemmaFinder);
+        SearchConfig searchConfig = new SearchConfig();
+        snippetBuilder = new SnippetBuilder(lemmaFinder, searchConfig);
+        texts = new ArrayList<>();
+        snippets = new ArrayList<>();
+        for (String page : BenchFixtures.loadPages()) {
+            String text = documentProcessor.parse(page, "").text();
+            texts.add(text);
+            snippets.add(text.substring(0, Math.min(text.length(), searchConfig.getSnippet().getLength())));
+        }
+        highlighter = snippetBuilder.highlighter(SnippetBuilder.extractQueryTerms(query),
+                lemmaFinder.collectLemmasFromText(query).keySet());
+    }
+
+    @Benchmark
+    public void buildSnippet(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(snippetBuilder.build(text, highlighter));
+        }
+    }
+
+    @Benchmark
+    public void highlightTerms(Blackhole blackhole) {
+        for (String snippet : snippets) {
+            blackhole.consume(highlighter.highlight(snippet, 0, snippet.length()));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package searchengine.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Синтетический сайт на встроенном HTTP-сервере для замера скорости обхода.
+ *
+ * <p>Страница {@code 0} — корень {@code /}, остальные — {@code /page/{n}}. Страница {@code n} ссылается на
+ * {@code fanOut} дочерних страниц ({@code n * fanOut + 1 ...}), поэтому обход в ширину доходит до всех страниц,
+ * и на две случайные уже существующие страницы (проверка фильтра посещённых URL). Текст страницы — {@code words}
+ * слов из фиксированного словаря; содержимое определяется номером страницы и одинаково между запусками.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+final class SyntheticSite implements AutoCloseable {
+
+    private static final String[] WORDS = {
+            "библиотека", "книги", "читатель", "чтение", "писатель", "повесть", "роман", "стихи", "выставка",
+            "встреча", "лекция", "история", "печатный", "станок", "типография", "издание", "тираж", "страница",
+            "глава", "автор", "редактор", "журнал", "газета", "словарь", "учебник", "азбука", "грамота", "школа",
+            "студенты", "университет", "наука", "знания", "открытие", "экспедиция", "путешествие", "север",
+            "смартфон", "экран", "аккумулятор", "камера", "зарядка", "память", "процессор", "телефон", "доставка",
+            "гарантия", "покупатель", "отзыв", "магазин", "цена", "заказ", "курьер", "город", "улица", "дом",
+            "работа", "время", "день", "неделя", "месяц", "год", "вечер", "утро", "большой", "новый", "старинный",
+            "интересный", "быстрый", "удобный", "яркий", "читать", "писать", "печатать", "покупать", "обсуждать",
+            "и", "в", "на", "с", "по", "для", "о", "не", "но", "или", "что", "как",
+            "library", "books", "reading", "history", "printing", "press", "delivery", "screen", "battery"
+    };
+
+    private final int pageCount;
+    private final int fanOut;
+    private final int words;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Запускает сервер на свободном порту локального интерфейса.
+     *
+     * @param pageCount количество страниц сайта
+     * @param fanOut количество ссылок на дочерние страницы
+     * @param words количество слов текста на странице
+     * @throws IOException если сервер не удалось запустить
+     */
+    SyntheticSite(int pageCount, int fanOut, int words) throws IOException {
+        this.pageCount = Math.max(1, pageCount);
+        this.fanOut = Math.max(1, fanOut);
+        this.words = Math.max(0, words);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(8);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Возвращает адрес корня сайта.
+     *
+     * @return {@link String} URL со слешем в конце
+     */
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Возвращает количество обработанных HTTP-запросов.
+     *
+     * @return количество запросов
+     */
+    long requests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Отдаёт страницу по номеру из пути или {@code 404}.
+     *
+     * @param exchange {@link HttpExchange} запрос
+     * @throws IOException при ошибке записи ответа
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            int page = pageNumber(exchange.getRequestURI().getPath());
+            if (page < 0) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = render(page).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Определяет номер страницы по пути.
+     *
+     * @param path {@link String} путь запроса
+     * @return номер страницы или {@code -1}, если страницы нет
+     */
+    private int pageNumber(String path) {
+        if (path.equals("/")) {
+            return 0;
+        }
+        if (!path.startsWith("/page/")) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(path.substring("/page/".length()));
+            return page > 0 && page < pageCount ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Формирует HTML-код страницы.
+     *
+     * @param page номер страницы
+     * @return {@link String} HTML-код
+     */
+    private String render(int page) {
+        Random random = new Random(31L * page + 17);
+        StringBuilder html = new StringBuilder(words * 12 + fanOut * 40 + 256);
+        html.append("<!DOCTYPE html><html lang=\"ru\"><head><meta charset=\"UTF-8\"><title>Страница ")
+                .append(page).append(' ').append(WORDS[random.nextInt(WORDS.length)])
+                .append("</title></head><body><nav>");
+        for (int i = 1; i <= fanOut; i++) {
+            long child = (long) page * fanOut + i;
+            if (child < pageCount) {
+                html.append("<a href=\"/page/").append(child).append("\">Раздел ").append(child).append("</a> ");
+            }
+        }
+        for (int i = 0; i < 2 && page > 0; i++) {
+            int other = random.nextInt(page);
+            html.append("<a href=\"").append(other == 0 ? "/" : "/page/" + other).append("\">Назад</a> ");
+        }
+        html.append("</nav><main><p>");
+        for (int i = 0; i < words; i++) {
+            if (i > 0 && i % 60 == 0) {
+                html.append("</p><p>");
+            }
+            html.append(WORDS[random.nextInt(WORDS.length)]).append(i % 12 == 11 ? ". " : " ");
+        }
+        html.append("</p></main></body></html>");
+        return html.toString();
+    }
+}
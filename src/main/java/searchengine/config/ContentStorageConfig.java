@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.model.enums.ContentStorageMode;
+
+/**
+ * Настройки хранения HTML-кода страниц.
+ *
+ * @author Tseliar Vladimir
+ */
+@Getter
+@Setter
+public class ContentStorageConfig {
+
+    private ContentStorageMode mode = ContentStorageMode.COMPRESSED;
+    private int compressionLevel = 1;
+}
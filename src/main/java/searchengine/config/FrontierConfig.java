@@ -0,0 +1,20 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Настройки очереди обхода сайта (crawl frontier).
+ *
+ * @author Tseliar Vladimir
+ */
+@Getter
+@Setter
+public class FrontierConfig {
+
+    private int maxQueueSize = 100_000;
+    private int maxDepth = 0;
+    private int maxUrlsPerDepth = 0;
+    private long expectedUrls = 1_000_000;
+    private double falsePositiveRate = 0.0001d;
+}
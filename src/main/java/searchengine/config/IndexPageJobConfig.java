@@ -0,0 +1,20 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Настройки заданий пакетной индексации страниц ({@code /api/indexPages}).
+ *
+ * @author Tseliar Vladimir
+ */
+@Getter
+@Setter
+public class IndexPageJobConfig {
+
+    private int maxUrls = 1000;
+    private int maxQueuedJobs = 10;
+    private int fetchConcurrency = 8;
+    private int writeBatchSize = 50;
+    private int retainedJobs = 100;
+}
@@ -4,6 +4,8 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import searchengine.model.enums.LemmaWriteMode;
+import searchengine.model.enums.ReindexMode;
 
 import java.util.List;
 
@@ -21,4 +23,28 @@ public class IndexingConfig {
     private List<SiteConfig> sites;
     private String userAgent;
     private String referrer;
+    private int batchSize = 500;
+    private LemmaWriteMode lemmaWriteMode = LemmaWriteMode.PAGE;
+    private long bulkFlushPostings = 1_000_000;
+    private FrontierConfig frontier = new FrontierConfig();
+    private PipelineConfig pipeline = new PipelineConfig();
+    private int fetchConcurrency = 16;
+    private int fetchTimeoutMs = 10_000;
+    private int lemmaCacheSize = 200_000;
+    private MorphologyConfig morphology = new MorphologyConfig();
+    private ContentStorageConfig contentStorage = new ContentStorageConfig();
+    private PurgeConfig purge = new PurgeConfig();
+    private IndexPageJobConfig indexPageJobs = new IndexPageJobConfig();
+    private ReindexMode reindexMode = ReindexMode.SHADOW;
+
+    /**
+     * Возвращает максимальное количество одновременных HTTP-запросов к сайту.
+     *
+     * @param site {@link SiteConfig} сайт
+     * @return лимит сайта или общий {@code fetch-concurrency}, если для сайта он не задан
+     */
+    public int fetchConcurrencyFor(SiteConfig site) {
+        Integer limit = site.getFetchConcurrency();
+        return Math.max(1, limit != null ? limit : fetchConcurrency);
+    }
 }
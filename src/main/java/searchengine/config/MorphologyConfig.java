@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.model.enums.MorphologyMode;
+
+/**
+ * Настройки экземпляров морфологических анализаторов {@code LuceneMorphology}.
+ *
+ * @author Tseliar Vladimir
+ */
+@Getter
+@Setter
+public class MorphologyConfig {
+
+    private MorphologyMode mode = MorphologyMode.POOL;
+    private int poolSize = 4;
+}
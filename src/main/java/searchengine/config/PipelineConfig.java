@@ -0,0 +1,36 @@
+package searchengine.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Настройки стадий конвейера обхода сайта (разбор, лемматизация, запись в БД).
+ *
+ * <p>Стадия загрузки настраивается отдельно: {@code fetch-concurrency} в {@link IndexingConfig} и {@link SiteConfig}.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Getter
+@Setter
+public class PipelineConfig {
+
+    private StageConfig parse = new StageConfig(2, 64);
+    private StageConfig lemmatize = new StageConfig(4, 64);
+    private StageConfig persist = new StageConfig(2, 64);
+    private int reportIntervalSeconds = 30;
+
+    /**
+     * Настройки одной стадии конвейера.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StageConfig {
+
+        private int threads = 1;
+        private int queueCapacity = 64;
+    }
+}
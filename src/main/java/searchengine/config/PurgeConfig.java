@@ -0,0 +1,17 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Настройки удаления данных сайта порциями.
+ *
+ * @author Tseliar Vladimir
+ */
+@Getter
+@Setter
+public class PurgeConfig {
+
+    private int pageChunk = 500;
+    private int lemmaChunk = 10_000;
+}
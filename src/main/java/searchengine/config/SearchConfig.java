@@ -0,0 +1,49 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import searchengine.model.enums.SearchEngineType;
+
+/**
+ * Настройки поиска из конфигурационного файла.
+ *
+ * @author Tseliar Vladimir
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchConfig {
+
+    private SearchEngineType engine = SearchEngineType.SQL;
+    private int parallelism = 4;
+    private int queueCapacity = 64;
+    private long timeoutMs = 2_000;
+    private CacheConfig cache = new CacheConfig();
+    private SnippetConfig snippet = new SnippetConfig();
+
+    /**
+     * Настройки кэша результатов поиска.
+     */
+    @Getter
+    @Setter
+    public static class CacheConfig {
+
+        private long maxBytes = 32L * 1024 * 1024;
+        private int maxEntries = 10_000;
+        private int depth = 200;
+    }
+
+    /**
+     * Настройки сниппетов результатов поиска.
+     */
+    @Getter
+    @Setter
+    public static class SnippetConfig {
+
+        private int length = 240;
+        private int maxScanWords = 5_000;
+    }
+}
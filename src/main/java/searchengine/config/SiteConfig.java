@@ -14,4 +14,5 @@ public class SiteConfig {
 
     private String url;
     private String name;
+    private Integer fetchConcurrency;
 }
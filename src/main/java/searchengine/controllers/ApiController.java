@@ -1,17 +1,23 @@
 package searchengine.controllers;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import searchengine.model.dto.indexing.IndexPageJobResponse;
+import searchengine.model.dto.indexing.IndexPageJobStatusResponse;
 import searchengine.model.dto.indexing.IndexPageResponse;
 import searchengine.model.dto.indexing.IndexingResponseDTO;
 import searchengine.model.dto.search.SearchResponse;
 import searchengine.model.dto.statistics.StatisticsResponse;
+import searchengine.service.IndexPageJobService;
 import searchengine.service.IndexingService;
 import searchengine.service.PageIndexingService;
 import searchengine.service.SearchService;
 import searchengine.service.StatisticsService;
 
+import java.util.List;
+
 /**
  * REST-контроллер API для индексации и статистики.
  *
@@ -25,6 +31,7 @@ public class ApiController {
     private final StatisticsService statisticsService;
     private final IndexingService indexingService;
     private final PageIndexingService pageIndexingService;
+    private final IndexPageJobService indexPageJobService;
     private final SearchService searchService;
 
     /**
@@ -72,6 +79,36 @@ public class ApiController {
         return ResponseEntity.badRequest().body(response);
     }
 
+    /**
+     * Ставит в очередь задание переиндексации списка страниц. Пустой список, слишком много URL или незавершённых
+     * заданий — ответ 400 с текстом ошибки.
+     *
+     * @param urls {@link List}<{@link String}> URL страниц (JSON-массив в теле запроса)
+     * @return {@link ResponseEntity}<{@link IndexPageJobResponse}> с ID задания
+     */
+    @PostMapping("/indexPages")
+    public ResponseEntity<IndexPageJobResponse> indexPages(@RequestBody List<String> urls) {
+        IndexPageJobResponse response = indexPageJobService.submit(urls);
+        if (response.isResult()) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        }
+        return ResponseEntity.badRequest().body(response);
+    }
+
+    /**
+     * Возвращает ход выполнения задания переиндексации страниц и результаты по каждому URL.
+     *
+     * @param jobId {@link String} ID задания
+     * @return {@link ResponseEntity}<{@link IndexPageJobStatusResponse}> с состоянием задания
+     */
+    @GetMapping("/indexPages/{jobId}")
+    public ResponseEntity<IndexPageJobStatusResponse> indexPagesStatus(@PathVariable("jobId") String jobId) {
+        return indexPageJobService.status(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new IndexPageJobStatusResponse(false, "Задание не найдено")));
+    }
+
     /**
      * Выполняет поиск по запросу.
      *
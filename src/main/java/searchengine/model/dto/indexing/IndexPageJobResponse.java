@@ -0,0 +1,20 @@
+package searchengine.model.dto.indexing;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * DTO ответа на постановку задания пакетной индексации страниц ({@code POST /api/indexPages}).
+ *
+ * @author Tseliar Vladimir
+ */
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IndexPageJobResponse {
+
+    private boolean result;
+    private String jobId;
+    private String error;
+}
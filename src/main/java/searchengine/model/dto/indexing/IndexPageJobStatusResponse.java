@@ -0,0 +1,45 @@
+package searchengine.model.dto.indexing;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import searchengine.model.enums.IndexPageJobStatus;
+
+import java.util.List;
+
+/**
+ * DTO ответа о состоянии задания пакетной индексации страниц ({@code GET /api/indexPages/{jobId}}).
+ *
+ * <p>Время создания, запуска и завершения задания — в миллисекундах от начала эпохи.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IndexPageJobStatusResponse {
+
+    private boolean result;
+    private String error;
+    private String jobId;
+    private IndexPageJobStatus status;
+    private int total;
+    private int processed;
+    private int indexed;
+    private int failed;
+    private Long createdTime;
+    private Long startedTime;
+    private Long finishedTime;
+    private List<IndexPageUrlResult> results;
+
+    /**
+     * Конструктор ответа с текстом ошибки.
+     *
+     * @param result {@link boolean} результат операции
+     * @param error {@link String} текст ошибки
+     */
+    public IndexPageJobStatusResponse(boolean result, String error) {
+        this.result = result;
+        this.error = error;
+    }
+}
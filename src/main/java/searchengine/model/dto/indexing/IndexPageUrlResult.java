@@ -0,0 +1,16 @@
+package searchengine.model.dto.indexing;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import searchengine.model.enums.IndexPageUrlStatus;
+
+/**
+ * Результат индексации одного URL задания.
+ *
+ * @param url URL страницы
+ * @param status {@link IndexPageUrlStatus} результат
+ * @param error текст ошибки или {@code null}
+ * @author Tseliar Vladimir
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IndexPageUrlResult(String url, IndexPageUrlStatus status, String error) {
+}
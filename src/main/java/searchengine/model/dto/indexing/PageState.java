@@ -0,0 +1,15 @@
+package searchengine.model.dto.indexing;
+
+/**
+ * Сохранённое состояние страницы для повторного обхода: валидаторы HTTP-кэша и хэш содержимого
+ * (без HTML-кода и текста страницы).
+ *
+ * @param id ID страницы
+ * @param path путь страницы
+ * @param etag значение заголовка {@code ETag} последнего ответа или {@code null}
+ * @param lastModified значение заголовка {@code Last-Modified} последнего ответа или {@code null}
+ * @param contentHash SHA-256 тела последнего ответа в шестнадцатеричном виде или {@code null}
+ * @author Tseliar Vladimir
+ */
+public record PageState(Integer id, String path, String etag, String lastModified, String contentHash) {
+}
@@ -0,0 +1,15 @@
+package searchengine.model.dto.search;
+
+/**
+ * Данные страницы, нужные для формирования элемента выдачи (без HTML-кода страницы).
+ *
+ * @param id ID страницы
+ * @param siteUrl URL сайта
+ * @param siteName название сайта
+ * @param path путь страницы
+ * @param title заголовок страницы
+ * @param text видимый текст страницы или {@code null}, если страница проиндексирована до появления столбца
+ * @author Tseliar Vladimir
+ */
+public record PageSearchView(Integer id, String siteUrl, String siteName, String path, String title, String text) {
+}
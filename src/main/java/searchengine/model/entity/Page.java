@@ -39,10 +39,29 @@ public class Page {
     @Column(name = "code", nullable = false)
     private Integer code;
 
-    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMTEXT")
+    @Column(name = "content", columnDefinition = "MEDIUMTEXT")
     @JsonIgnore
     private String content;
 
+    @Column(name = "title", length = 512)
+    private String title;
+
+    @Column(name = "text", columnDefinition = "MEDIUMTEXT")
+    @JsonIgnore
+    private String text;
+
+    @Column(name = "etag")
+    @JsonIgnore
+    private String etag;
+
+    @Column(name = "last_modified", length = 64)
+    @JsonIgnore
+    private String lastModified;
+
+    @Column(name = "content_hash", length = 64)
+    @JsonIgnore
+    private String contentHash;
+
     @OneToMany(mappedBy = "page", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     @Builder.Default
     @JsonIgnore
@@ -0,0 +1,34 @@
+package searchengine.model.entity;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * Сжатый HTML-код страницы, вынесенный из строки {@code page}.
+ *
+ * <p>Строка связана со страницей по {@code page_id} без внешнего ключа и удаляется вместе со страницей
+ * явным запросом ({@link searchengine.repository.PageContentRepository}).</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Entity
+@Table(name = "page_content")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PageContent {
+
+    @Id
+    @Column(name = "page_id")
+    private Integer pageId;
+
+    @Column(name = "raw_length", nullable = false)
+    private Integer rawLength;
+
+    @Lob
+    @Column(name = "data", nullable = false, columnDefinition = "MEDIUMBLOB")
+    private byte[] data;
+}
@@ -2,6 +2,7 @@ package searchengine.model.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import searchengine.model.enums.SiteGeneration;
 import searchengine.model.enums.SiteStatus;
 
 import javax.persistence.*;
@@ -43,6 +44,11 @@ public class Site {
     @Column(name = "name", nullable = false)
     private String name;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "generation", length = 16)
+    @Builder.Default
+    private SiteGeneration generation = SiteGeneration.LIVE;
+
     @OneToMany(mappedBy = "site", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     @Builder.Default
     @JsonIgnore
@@ -52,4 +58,13 @@ public class Site {
     @Builder.Default
     @JsonIgnore
     private List<Lemma> lemmas = new ArrayList<>();
+
+    /**
+     * Проверяет, что запись — текущее поколение сайта, по которому выполняется поиск.
+     *
+     * @return true для поколения {@link SiteGeneration#LIVE} и записей, созданных до появления поколений
+     */
+    public boolean isLive() {
+        return generation == null || generation == SiteGeneration.LIVE;
+    }
 }
@@ -0,0 +1,17 @@
+package searchengine.model.enums;
+
+/**
+ * Способ хранения HTML-кода страниц.
+ *
+ * @author Tseliar Vladimir
+ */
+public enum ContentStorageMode {
+    /**
+     * HTML-код хранится как есть в столбце {@code page.content}.
+     */
+    INLINE,
+    /**
+     * HTML-код сжимается и хранится в отдельной таблице {@code page_content}; строка {@code page} его не содержит.
+     */
+    COMPRESSED
+}
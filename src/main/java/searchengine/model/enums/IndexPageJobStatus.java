@@ -0,0 +1,29 @@
+package searchengine.model.enums;
+
+/**
+ * Состояние задания пакетной индексации страниц.
+ *
+ * @author Tseliar Vladimir
+ */
+public enum IndexPageJobStatus {
+    /**
+     * Задание ожидает в очереди, пока выполняются предыдущие.
+     */
+    QUEUED,
+    /**
+     * Страницы задания загружаются и записываются.
+     */
+    RUNNING,
+    /**
+     * Все URL задания обработаны.
+     */
+    COMPLETED,
+    /**
+     * Задание прервано остановкой приложения; необработанные URL отмечены как не проиндексированные.
+     */
+    CANCELLED,
+    /**
+     * Задание остановлено непредвиденной ошибкой; необработанные URL отмечены как не проиндексированные.
+     */
+    FAILED
+}
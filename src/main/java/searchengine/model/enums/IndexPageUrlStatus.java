@@ -0,0 +1,21 @@
+package searchengine.model.enums;
+
+/**
+ * Результат индексации одного URL в задании пакетной индексации страниц.
+ *
+ * @author Tseliar Vladimir
+ */
+public enum IndexPageUrlStatus {
+    /**
+     * URL ещё не обработан.
+     */
+    PENDING,
+    /**
+     * Страница загружена и записана в индекс.
+     */
+    INDEXED,
+    /**
+     * Страницу не удалось проиндексировать или задание прервано до её обработки (текст ошибки в результате).
+     */
+    FAILED
+}
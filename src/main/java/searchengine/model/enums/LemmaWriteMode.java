@@ -0,0 +1,17 @@
+package searchengine.model.enums;
+
+/**
+ * Режим записи лемм и индекса при полной индексации сайта.
+ *
+ * @author Tseliar Vladimir
+ */
+public enum LemmaWriteMode {
+    /**
+     * Леммы и индекс записываются в БД сразу после сохранения каждой страницы.
+     */
+    PAGE,
+    /**
+     * Леммы и индекс накапливаются в памяти по сайту и записываются в БД большими пакетами.
+     */
+    BULK
+}
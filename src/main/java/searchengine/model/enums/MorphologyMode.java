@@ -0,0 +1,21 @@
+package searchengine.model.enums;
+
+/**
+ * Способ разделения экземпляров морфологического анализатора между потоками.
+ *
+ * @author Tseliar Vladimir
+ */
+public enum MorphologyMode {
+    /**
+     * Один экземпляр словаря на язык для всех потоков.
+     */
+    SHARED,
+    /**
+     * Собственный экземпляр словаря в каждом потоке, который выполняет лемматизацию.
+     */
+    THREAD_LOCAL,
+    /**
+     * Пул экземпляров словаря на язык; экземпляры создаются по мере одновременных обращений до размера пула.
+     */
+    POOL
+}
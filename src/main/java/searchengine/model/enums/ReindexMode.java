@@ -0,0 +1,23 @@
+package searchengine.model.enums;
+
+/**
+ * Способ полной переиндексации уже проиндексированного сайта.
+ *
+ * @author Tseliar Vladimir
+ */
+public enum ReindexMode {
+    /**
+     * Данные сайта удаляются до начала обхода; до его окончания поиск по сайту не работает.
+     */
+    PURGE,
+    /**
+     * Новый индекс строится в теневом поколении, а поиск идёт по текущему; после обхода поколения меняются
+     * местами, старое удаляется в фоне.
+     */
+    SHADOW,
+    /**
+     * Данные сайта сохраняются: страницы загружаются условными запросами ({@code If-None-Match},
+     * {@code If-Modified-Since}), лемматизируются и записываются только новые и изменившиеся страницы.
+     */
+    INCREMENTAL
+}
@@ -0,0 +1,17 @@
+package searchengine.model.enums;
+
+/**
+ * Тип движка, который находит страницы по леммам запроса.
+ *
+ * @author Tseliar Vladimir
+ */
+public enum SearchEngineType {
+    /**
+     * Поиск запросом к таблицам {@code lemma}/{@code search_index} в MySQL.
+     */
+    SQL,
+    /**
+     * Поиск по спискам вхождений, которые хранятся в памяти приложения.
+     */
+    MEMORY
+}
@@ -0,0 +1,21 @@
+package searchengine.model.enums;
+
+/**
+ * Поколение данных сайта: каждая запись {@code site} со своими страницами и леммами — отдельное поколение индекса.
+ *
+ * @author Tseliar Vladimir
+ */
+public enum SiteGeneration {
+    /**
+     * Поколение, по которому выполняется поиск (у записей без поколения — тоже).
+     */
+    LIVE,
+    /**
+     * Поколение, которое строится переиндексацией, пока поиск идёт по текущему.
+     */
+    SHADOW,
+    /**
+     * Заменённое поколение, ожидающее удаления в фоне.
+     */
+    RETIRED
+}
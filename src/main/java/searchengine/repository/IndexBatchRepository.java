@@ -0,0 +1,239 @@
+package searchengine.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Пакетная запись лемм и строк индекса через JDBC (в обход Hibernate).
+ *
+ * <p>Вместо отдельного запроса на каждую лемму используются многострочные {@code INSERT ... ON DUPLICATE KEY UPDATE}
+ * и JDBC batch. Для того чтобы драйвер MySQL объединял batch в один запрос, в URL подключения нужно
+ * указать {@code rewriteBatchedStatements=true}.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Repository
+@RequiredArgsConstructor
+public class IndexBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Добавляет леммы сайта или увеличивает их frequency на заданную величину многострочными UPSERT.
+     *
+     * <p>Леммы записываются в порядке итерации карты, поэтому для уменьшения дедлоков её стоит передавать
+     * отсортированной.</p>
+     *
+     * @param siteId ID сайта
+     * @param frequencyDeltas {@link Map}<{@link String}, {@link Integer}> карта {@code лемма -> прирост frequency}
+     * @param batchSize максимальное количество строк в одном запросе
+     * @return количество выполненных запросов
+     */
+    public int upsertLemmaFrequencies(int siteId, Map<String, Integer> frequencyDeltas, int batchSize) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(frequencyDeltas.entrySet());
+        int statements = 0;
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            List<Map.Entry<String, Integer>> chunk = entries.subList(from, Math.min(from + batchSize, entries.size()));
+            StringBuilder sql = new StringBuilder("INSERT INTO lemma (site_id, lemma, frequency) VALUES ");
+            Object[] args = new Object[chunk.size() * 3];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : chunk) {
+                sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+                args[i++] = siteId;
+                args[i++] = entry.getKey();
+                args[i++] = entry.getValue();
+            }
+            sql.append(" ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)");
+            jdbcTemplate.update(sql.toString(), args);
+            statements++;
+        }
+        return statements;
+    }
+
+    /**
+     * Возвращает ID лемм сайта запросом {@code IN} (по {@code batchSize} лемм в запросе).
+     *
+     * <p>При сравнении строк MySQL учитывает collation столбца (например, «е» и «ё» в {@code utf8mb4_unicode_ci}
+     * равны), поэтому найденная строка может отличаться от запрошенной. Такие леммы сопоставляются по ключу
+     * {@link #foldKey(String)}.</p>
+     *
+     * @param siteId ID сайта
+     * @param lemmas {@link Collection}<{@link String}> тексты лемм
+     * @param batchSize максимальное количество лемм в одном запросе
+     * @return {@link Map}<{@link String}, {@link Integer}> карта {@code запрошенная лемма -> ID}
+     */
+    public Map<String, Integer> findLemmaIds(int siteId, Collection<String> lemmas, int batchSize) {
+        List<String> all = new ArrayList<>(lemmas);
+        Map<String, Integer> exact = new HashMap<>(all.size() * 2);
+        Map<String, Integer> folded = new HashMap<>();
+        for (int from = 0; from < all.size(); from += batchSize) {
+            List<String> chunk = all.subList(from, Math.min(from + batchSize, all.size()));
+            Object[] args = new Object[chunk.size() + 1];
+            args[0] = siteId;
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i + 1] = chunk.get(i);
+            }
+            jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ? AND lemma IN ("
+                            + placeholders(chunk.size()) + ")",
+                    rs -> {
+                        int id = rs.getInt(1);
+                        String text = rs.getString(2);
+                        exact.put(text, id);
+                        folded.put(foldKey(text), id);
+                    }, args);
+        }
+        Map<String, Integer> result = new HashMap<>(all.size() * 2);
+        for (String lemma : all) {
+            Integer id = exact.get(lemma);
+            if (id == null) {
+                id = folded.get(foldKey(lemma));
+            }
+            if (id != null) {
+                result.put(lemma, id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Добавляет строки индекса (или обновляет rank существующих) через JDBC batch.
+     *
+     * <p>Массивы задают строки по позициям: {@code (pageIds[i], lemmaIds[i], ranks[i])}. Строки лучше передавать
+     * отсортированными по {@code (page_id, lemma_id)} — в порядке уникального ключа таблицы.</p>
+     *
+     * @param pageIds {@code int[]} ID страниц
+     * @param lemmaIds {@code int[]} ID лемм
+     * @param ranks {@code float[]} значения rank
+     * @param batchSize размер JDBC batch
+     * @return количество выполненных batch
+     */
+    public int upsertIndexRows(int[] pageIds, int[] lemmaIds, float[] ranks, int batchSize) {
+        List<Object[]> batch = new ArrayList<>(Math.min(batchSize, lemmaIds.length));
+        int statements = 0;
+        for (int i = 0; i < lemmaIds.length; i++) {
+            batch.add(new Object[]{pageIds[i], lemmaIds[i], ranks[i]});
+            if (batch.size() >= batchSize) {
+                executeIndexBatch(batch);
+                statements++;
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            executeIndexBatch(batch);
+            statements++;
+        }
+        return statements;
+    }
+
+    /**
+     * Строка индекса страницы вместе с текстом леммы.
+     *
+     * @param lemmaId ID леммы
+     * @param lemma текст леммы
+     * @param rank значение rank
+     */
+    public record PagePosting(int lemmaId, String lemma, float rank) {
+    }
+
+    /**
+     * Возвращает строки индекса страницы одним запросом.
+     *
+     * @param pageId ID страницы
+     * @return {@link List}<{@link PagePosting}> строки индекса страницы
+     */
+    public List<PagePosting> findPagePostings(int pageId) {
+        return jdbcTemplate.query("""
+                SELECT i.lemma_id, l.lemma, i.rank_value
+                FROM search_index i JOIN lemma l ON l.id = i.lemma_id
+                WHERE i.page_id = ?
+                """, (rs, row) -> new PagePosting(rs.getInt(1), rs.getString(2), rs.getFloat(3)), pageId);
+    }
+
+    /**
+     * Удаляет строки индекса страницы для перечисленных лемм запросами {@code IN}.
+     *
+     * @param pageId ID страницы
+     * @param lemmaIds {@link List}<{@link Integer}> ID лемм
+     * @param batchSize максимальное количество лемм в одном запросе
+     * @return количество выполненных запросов
+     */
+    public int deleteIndexRows(int pageId, List<Integer> lemmaIds, int batchSize) {
+        int statements = 0;
+        for (int from = 0; from < lemmaIds.size(); from += batchSize) {
+            List<Integer> chunk = lemmaIds.subList(from, Math.min(from + batchSize, lemmaIds.size()));
+            Object[] args = new Object[chunk.size() + 1];
+            args[0] = pageId;
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i + 1] = chunk.get(i);
+            }
+            jdbcTemplate.update("DELETE FROM search_index WHERE page_id = ? AND lemma_id IN ("
+                    + placeholders(chunk.size()) + ")", args);
+            statements++;
+        }
+        return statements;
+    }
+
+    /**
+     * Уменьшает frequency лемм на единицу и удаляет леммы, которые больше не встречаются ни на одной странице.
+     *
+     * <p>ID лемм стоит передавать отсортированными, чтобы строки блокировались в одном порядке.</p>
+     *
+     * @param lemmaIds {@link List}<{@link Integer}> ID лемм
+     * @param batchSize максимальное количество лемм в одном запросе
+     * @return количество выполненных запросов
+     */
+    public int decrementLemmaFrequencies(List<Integer> lemmaIds, int batchSize) {
+        int statements = 0;
+        for (int from = 0; from < lemmaIds.size(); from += batchSize) {
+            List<Integer> chunk = lemmaIds.subList(from, Math.min(from + batchSize, lemmaIds.size()));
+            Object[] args = chunk.toArray();
+            String in = placeholders(chunk.size());
+            jdbcTemplate.update("UPDATE lemma SET frequency = frequency - 1 WHERE id IN (" + in + ")", args);
+            jdbcTemplate.update("DELETE FROM lemma WHERE id IN (" + in + ") AND frequency <= 0", args);
+            statements += 2;
+        }
+        return statements;
+    }
+
+    /**
+     * Выполняет один JDBC batch UPSERT строк {@code search_index}.
+     *
+     * @param batch {@link List}<{@link Object[]}> строки вида {@code [page_id, lemma_id, rank_value]}
+     */
+    private void executeIndexBatch(List<Object[]> batch) {
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO search_index (page_id, lemma_id, rank_value)
+                VALUES (?, ?, ?)
+                ON DUPLICATE KEY UPDATE rank_value = VALUES(rank_value)
+                """, batch);
+    }
+
+    /**
+     * Возвращает список параметров {@code ?, ?, ...} для условия {@code IN}.
+     *
+     * @param count количество параметров
+     * @return {@link String} список параметров
+     */
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Возвращает ключ леммы без учёта различий, которые игнорирует collation MySQL (регистр, «ё»/«е»).
+     *
+     * @param lemma {@link String} текст леммы
+     * @return {@link String} ключ для сопоставления
+     */
+    private static String foldKey(String lemma) {
+        return lemma.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+}
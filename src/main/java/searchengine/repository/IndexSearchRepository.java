@@ -3,6 +3,7 @@ package searchengine.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -11,7 +12,9 @@ import searchengine.model.entity.Lemma;
 import searchengine.model.entity.Page;
 import searchengine.model.entity.Site;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Репозиторий для сущности {@link searchengine.model.entity.IndexSearch}.
@@ -77,11 +80,15 @@ public interface IndexSearchRepository extends JpaRepository<IndexSearch, Intege
     /**
      * Возвращает список страниц, содержащих все указанные леммы, с суммой rank по этим леммам.
      *
+     * <p>Результат читается потоком (см. {@link #streamPostingsBySite(int)}); поток нужно закрывать и читать
+     * внутри транзакции.</p>
+     *
      * @param siteId ID сайта
      * @param lemmaIds ID лемм
      * @param lemmaCount количество лемм (для условия пересечения)
-     * @return {@link List}<{@link Object[]}> список строк вида {@code [page_id, abs_sum]}
+     * @return {@link Stream}<{@link Object[]}> строки вида {@code [page_id, abs_sum]}
      */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
     @Query(value = """
             SELECT si.page_id AS pageId, SUM(si.rank_value) AS absSum
             FROM search_index si
@@ -92,9 +99,29 @@ public interface IndexSearchRepository extends JpaRepository<IndexSearch, Intege
             GROUP BY si.page_id
             HAVING COUNT(DISTINCT si.lemma_id) = :lemmaCount
             """, nativeQuery = true)
-    List<Object[]> findPageAbsRelevance(
+    Stream<Object[]> streamPageAbsRelevance(
             @Param("siteId") int siteId,
             @Param("lemmaIds") List<Integer> lemmaIds,
             @Param("lemmaCount") int lemmaCount
     );
+
+    /**
+     * Потоково возвращает все вхождения лемм сайта для загрузки индекса в память.
+     *
+     * <p>Размер выборки {@link Integer#MIN_VALUE} включает потоковое чтение результата драйвером MySQL,
+     * поэтому строки не накапливаются в памяти целиком. Поток нужно закрывать и читать внутри транзакции.</p>
+     *
+     * @param siteId ID сайта
+     * @return {@link Stream}<{@link Object[]}> строки вида {@code [lemma, page_id, rank_value]}
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query(value = """
+            SELECT l.lemma AS lemma, si.page_id AS pageId, si.rank_value AS rankValue
+            FROM search_index si
+            JOIN lemma l ON l.id = si.lemma_id
+            JOIN page p ON p.id = si.page_id
+            WHERE l.site_id = :siteId
+              AND p.code < 400
+            """, nativeQuery = true)
+    Stream<Object[]> streamPostingsBySite(@Param("siteId") int siteId);
 }
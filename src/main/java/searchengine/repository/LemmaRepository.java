@@ -7,7 +7,6 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.entity.Lemma;
-import searchengine.model.entity.Page;
 import searchengine.model.entity.Site;
 
 import java.util.Collection;
@@ -60,24 +59,6 @@ public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
     @Query("DELETE FROM Lemma l WHERE l.site = :site AND l.frequency = 0")
     void deleteUnusedLemmasBySite(@Param("site") Site site);
 
-    /**
-     * Возвращает уникальные леммы, связанные со страницей.
-     *
-     * @param page {@link Page} страница
-     * @return {@link List}<{@link Lemma}> список лемм
-     */
-    @Query("SELECT DISTINCT i.lemma FROM IndexSearch i WHERE i.page = :page")
-    List<Lemma> findLemmasByPage(@Param("page") Page page);
-
-    /**
-     * Считает количество записей индекса, в которых встречается лемма.
-     *
-     * @param lemma {@link Lemma} лемма
-     * @return количество ссылок на лемму
-     */
-    @Query("SELECT COUNT(i) FROM IndexSearch i WHERE i.lemma = :lemma")
-    long countUsageByLemma(@Param("lemma") Lemma lemma);
-
     /**
      * Считает количество лемм для сайта.
      *
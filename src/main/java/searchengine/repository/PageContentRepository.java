@@ -0,0 +1,39 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.entity.PageContent;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Репозиторий для сущности {@link searchengine.model.entity.PageContent}.
+ *
+ * @author Tseliar Vladimir
+ */
+@Repository
+public interface PageContentRepository extends JpaRepository<PageContent, Integer> {
+
+    /**
+     * Возвращает сжатый HTML-код страниц.
+     *
+     * @param pageIds {@link Collection}<{@link Integer}> идентификаторы страниц
+     * @return {@link List}<{@link PageContent}> найденные строки
+     */
+    List<PageContent> findAllByPageIdIn(Collection<Integer> pageIds);
+
+    /**
+     * Удаляет HTML-код страницы.
+     *
+     * @param pageId идентификатор страницы
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PageContent c WHERE c.pageId = :pageId")
+    void deleteByPageId(@Param("pageId") Integer pageId);
+}
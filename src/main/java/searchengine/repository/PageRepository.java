@@ -6,6 +6,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.dto.indexing.PageState;
+import searchengine.model.dto.search.PageSearchView;
 import searchengine.model.entity.Page;
 import searchengine.model.entity.Site;
 
@@ -48,6 +50,48 @@ public interface PageRepository extends JpaRepository<Page, Integer> {
      */
     Optional<Page> findBySiteAndPath(Site site, String path);
     
+    /**
+     * Ищет ID страницы по сайту и пути, не загружая саму страницу.
+     *
+     * @param site {@link Site} сайт
+     * @param path {@link String} путь страницы
+     * @return {@link Optional}<{@link Integer}> ID найденной страницы (если есть)
+     */
+    @Query("SELECT p.id FROM Page p WHERE p.site = :site AND p.path = :path")
+    Optional<Integer> findIdBySiteAndPath(@Param("site") Site site, @Param("path") String path);
+
+    /**
+     * Записывает новую версию страницы в существующую строку {@code page} (ID и путь не меняются).
+     *
+     * @param id ID страницы
+     * @param code код ответа сервера
+     * @param title {@link String} заголовок
+     * @param text {@link String} текст страницы
+     * @param content {@link String} HTML-код ({@code null}, если он хранится в {@code page_content})
+     * @param etag {@link String} значение ETag
+     * @param lastModified {@link String} значение Last-Modified
+     * @param contentHash {@link String} хэш тела ответа
+     * @return количество обновлённых строк
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Page p SET p.code = :code, p.title = :title, p.text = :text, p.content = :content, "
+            + "p.etag = :etag, p.lastModified = :lastModified, p.contentHash = :contentHash WHERE p.id = :id")
+    int updateVersion(@Param("id") int id, @Param("code") Integer code, @Param("title") String title,
+                      @Param("text") String text, @Param("content") String content, @Param("etag") String etag,
+                      @Param("lastModified") String lastModified, @Param("contentHash") String contentHash);
+
+    /**
+     * Удаляет строку страницы запросом, не загружая страницу и её строки индекса.
+     *
+     * @param id ID страницы
+     * @return количество удалённых строк
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Page p WHERE p.id = :id")
+    int deleteRowById(@Param("id") int id);
+
     /**
      * Возвращает все страницы сайта.
      *
@@ -56,6 +100,15 @@ public interface PageRepository extends JpaRepository<Page, Integer> {
      */
     List<Page> findBySite(Site site);
 
+    /**
+     * Возвращает ID всех страниц сайта.
+     *
+     * @param siteId ID сайта
+     * @return {@link List}<{@link Integer}> ID страниц
+     */
+    @Query("SELECT p.id FROM Page p WHERE p.site.id = :siteId")
+    List<Integer> findIdsBySiteId(@Param("siteId") int siteId);
+
     /**
      * Считает количество страниц сайта.
      *
@@ -72,4 +125,24 @@ public interface PageRepository extends JpaRepository<Page, Integer> {
      */
     @Query("SELECT p FROM Page p JOIN FETCH p.site WHERE p.id IN :ids")
     List<Page> findAllByIdInWithSite(@Param("ids") List<Integer> ids);
+
+    /**
+     * Возвращает заголовок и текст страниц для поисковой выдачи, не загружая HTML-код страниц.
+     *
+     * @param ids {@link List}<{@link Integer}> идентификаторы страниц
+     * @return {@link List}<{@link PageSearchView}> данные страниц
+     */
+    @Query("SELECT new searchengine.model.dto.search.PageSearchView(p.id, s.url, s.name, p.path, p.title, p.text) "
+            + "FROM Page p JOIN p.site s WHERE p.id IN :ids")
+    List<PageSearchView> findSearchViewsByIdIn(@Param("ids") List<Integer> ids);
+
+    /**
+     * Возвращает валидаторы и хэши содержимого всех страниц сайта для повторного обхода, не загружая HTML-код.
+     *
+     * @param site {@link Site} сайт
+     * @return {@link List}<{@link PageState}> состояние страниц
+     */
+    @Query("SELECT new searchengine.model.dto.indexing.PageState(p.id, p.path, p.etag, p.lastModified, p.contentHash) "
+            + "FROM Page p WHERE p.site = :site")
+    List<PageState> findStatesBySite(@Param("site") Site site);
 }
@@ -0,0 +1,109 @@
+package searchengine.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Удаление данных сайта через JDBC порциями, без загрузки сущностей (в обход Hibernate).
+ *
+ * <p>Каждый метод выполняет один запрос; вне транзакции он фиксируется сразу, поэтому объём блокировок
+ * и журнала отмены ограничен размером порции.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Repository
+@RequiredArgsConstructor
+public class SitePurgeRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Возвращает ID сайтов с указанным URL.
+     *
+     * @param url {@link String} базовый URL сайта
+     * @return {@link List}<{@link Integer}> ID сайтов
+     */
+    public List<Integer> findSiteIds(String url) {
+        return jdbcTemplate.queryForList("SELECT id FROM site WHERE url = ?", Integer.class, url);
+    }
+
+    /**
+     * Возвращает очередную порцию ID страниц сайта в порядке возрастания.
+     *
+     * @param siteId ID сайта
+     * @param afterId ID, после которого начинается порция
+     * @param limit размер порции
+     * @return {@link List}<{@link Integer}> ID страниц
+     */
+    public List<Integer> findPageIds(int siteId, int afterId, int limit) {
+        return jdbcTemplate.queryForList("SELECT id FROM page WHERE site_id = ? AND id > ? ORDER BY id LIMIT ?",
+                Integer.class, siteId, afterId, limit);
+    }
+
+    /**
+     * Удаляет строки индекса страниц.
+     *
+     * @param pageIds {@link List}<{@link Integer}> ID страниц
+     * @return количество удалённых строк
+     */
+    public int deleteIndexByPages(List<Integer> pageIds) {
+        return deleteByIds("DELETE FROM search_index WHERE page_id IN ", pageIds);
+    }
+
+    /**
+     * Удаляет сжатый HTML-код страниц.
+     *
+     * @param pageIds {@link List}<{@link Integer}> ID страниц
+     * @return количество удалённых строк
+     */
+    public int deleteContentByPages(List<Integer> pageIds) {
+        return deleteByIds("DELETE FROM page_content WHERE page_id IN ", pageIds);
+    }
+
+    /**
+     * Удаляет страницы.
+     *
+     * @param pageIds {@link List}<{@link Integer}> ID страниц
+     * @return количество удалённых строк
+     */
+    public int deletePages(List<Integer> pageIds) {
+        return deleteByIds("DELETE FROM page WHERE id IN ", pageIds);
+    }
+
+    /**
+     * Удаляет порцию лемм сайта (строки индекса этих лемм должны быть удалены заранее).
+     *
+     * @param siteId ID сайта
+     * @param limit размер порции
+     * @return количество удалённых строк
+     */
+    public int deleteLemmaChunk(int siteId, int limit) {
+        return jdbcTemplate.update("DELETE FROM lemma WHERE site_id = ? LIMIT ?", siteId, limit);
+    }
+
+    /**
+     * Удаляет запись сайта.
+     *
+     * @param siteId ID сайта
+     * @return количество удалённых строк
+     */
+    public int deleteSite(int siteId) {
+        return jdbcTemplate.update("DELETE FROM site WHERE id = ?", siteId);
+    }
+
+    /**
+     * Выполняет {@code DELETE ... IN (...)} по списку ID.
+     *
+     * @param prefix {@link String} запрос до списка ID
+     * @param ids {@link List}<{@link Integer}> ID
+     * @return количество удалённых строк
+     */
+    private int deleteByIds(String prefix, List<Integer> ids) {
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return jdbcTemplate.update(prefix + "(" + placeholders + ")", ids.toArray());
+    }
+}
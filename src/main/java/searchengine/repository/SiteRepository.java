@@ -1,6 +1,8 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.entity.Site;
 
@@ -16,12 +18,14 @@ import java.util.Optional;
 public interface SiteRepository extends JpaRepository<Site, Integer> {
 
     /**
-     * Ищет сайт по базовому URL.
+     * Ищет текущее поколение сайта по базовому URL (теневые и заменённые поколения не учитываются).
      *
      * @param url {@link String} базовый URL
      * @return {@link Optional}<{@link Site}> найденный сайт (если есть)
      */
-    Optional<Site> findByUrl(String url);
+    @Query("SELECT s FROM Site s WHERE s.url = :url "
+            + "AND (s.generation IS NULL OR s.generation = searchengine.model.enums.SiteGeneration.LIVE)")
+    Optional<Site> findLiveByUrl(@Param("url") String url);
     
     /**
      * Возвращает все записи сайтов с указанным URL (на случай дубликатов).
@@ -7,11 +7,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.support.TransactionTemplate;
 import searchengine.config.IndexingConfig;
 import searchengine.config.SiteConfig;
-import searchengine.model.entity.Page;
+import searchengine.model.dto.indexing.PageState;
 import searchengine.model.entity.Site;
+import searchengine.model.enums.LemmaWriteMode;
+import searchengine.model.enums.ReindexMode;
+import searchengine.model.enums.SiteGeneration;
 import searchengine.model.enums.SiteStatus;
-import searchengine.repository.IndexSearchRepository;
-import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 
@@ -19,9 +20,7 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -37,13 +36,20 @@ public class AsyncSiteIndexingService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final IndexingConfig config;
+    private final DocumentProcessor documentProcessor;
     private final LemmaFinder lemmaFinder;
-    private final LemmaRepository lemmaRepository;
-    private final IndexSearchRepository indexRepository;
     private final LemmaIndexingService lemmaIndexingService;
     private final TransactionTemplate transactionTemplate;
+    private final IndexingMetrics indexingMetrics;
+    private final PageFetcher pageFetcher;
+    private final IndexGenerations indexGenerations;
+    private final MorphologyProvider morphologyProvider;
+    private final PageContentStore pageContentStore;
+    private final SitePurgeService sitePurgeService;
+    private final PageIndexingService pageIndexingService;
+    private final ShadowReindexes shadowReindexes;
 
-    private final Map<String, ForkJoinPool> activePools = new ConcurrentHashMap<>();
+    private final Map<String, CrawlPipeline> activeCrawls = new ConcurrentHashMap<>();
 
     /**
      * Запускает индексацию одного сайта в асинхронном потоке.
@@ -61,7 +67,7 @@ public class AsyncSiteIndexingService {
             log.error("Ошибка при индексации сайта {}: {}", siteConfig.getUrl(), e.getMessage(), e);
             List<Site> sites = siteRepository.findAllByUrl(siteConfig.getUrl());
             if (!sites.isEmpty()) {
-                sites.forEach(site -> {
+                sites.stream().filter(this::failsOnAbort).forEach(site -> {
                     site.setStatus(SiteStatus.FAILED);
                     site.setLastError("Ошибка индексации: " + e.getMessage());
                     site.setStatusTime(LocalDateTime.now());
@@ -69,13 +75,28 @@ public class AsyncSiteIndexingService {
                 });
             }
         } finally {
-            activePools.remove(siteConfig.getUrl());
+            activeCrawls.remove(siteConfig.getUrl());
             indexingService.completeSiteIndexing();
         }
     }
 
     /**
-     * Выполняет индексацию одного сайта с обходом ссылок в {@link ForkJoinPool}.
+     * Выполняет индексацию одного сайта: обход ссылок в ширину конвейером {@link CrawlPipeline}.
+     *
+     * <p>В режиме {@link LemmaWriteMode#BULK} леммы всех страниц накапливаются в {@link SiteLemmaBuffer}
+     * и записываются в БД пакетами: по достижении порога и после завершения обхода. При повторном обходе
+     * ({@link ReindexMode#INCREMENTAL}) сайт участвует в поиске, поэтому леммы пишутся после каждой страницы,
+     * как в режиме {@link LemmaWriteMode#PAGE}: новая страница находится поиском сразу после записи.</p>
+     *
+     * <p>В режиме {@link ReindexMode#SHADOW} уже проиндексированный сайт не очищается: обход пишет страницы и леммы
+     * в новую запись сайта (теневое поколение), а поиск продолжает работать по текущей. После успешного обхода
+     * поколения меняются местами в одной транзакции, старое удаляется в фоне. Если обход остановлен или завершился
+     * ошибкой, в фоне удаляется теневое поколение, а текущее остаётся. На время такого обхода сайт отмечен
+     * в {@link ShadowReindexes}, и отдельные страницы в него не записываются.</p>
+     *
+     * <p>В режиме {@link ReindexMode#INCREMENTAL} обход идёт по текущей записи сайта без очистки: страницы
+     * загружаются условными запросами, записываются только новые и изменившиеся страницы, а исчезнувшие с сайта
+     * страницы удаляются вместе с их леммами.</p>
      *
      * @param siteConfig {@link SiteConfig} конфигурация сайта
      * @param indexingService {@link IndexingService} сервис состояния индексации
@@ -87,49 +108,102 @@ public class AsyncSiteIndexingService {
         }
         
         Site site = null;
+        ReindexMode mode = config.getReindexMode();
+        Site live = mode != ReindexMode.PURGE
+                ? siteRepository.findLiveByUrl(siteConfig.getUrl())
+                        .filter(current -> current.getStatus() == SiteStatus.INDEXED)
+                        .orElse(null)
+                : null;
+        boolean incremental = live != null && mode == ReindexMode.INCREMENTAL;
+        if (live != null && !incremental) {
+            shadowReindexes.begin(siteConfig.getUrl());
+        }
         try {
-            transactionTemplate.executeWithoutResult(status -> clearSiteData(siteConfig.getUrl()));
+            if (live == null) {
+                sitePurgeService.purge(siteConfig.getUrl());
+            } else {
+                sitePurgeService.purgeExcept(siteConfig.getUrl(), live.getId());
+                log.info(incremental
+                                ? "Повторный обход сайта {} условными запросами (id {})"
+                                : "Переиндексация сайта {} в теневое поколение, поиск идёт по текущему (id {})",
+                        siteConfig.getUrl(), live.getId());
+            }
             
             if (indexingService.isStopRequested()) {
                 log.info("Остановка индексации запрошена после очистки данных, пропускаем создание сайта: {}", siteConfig.getUrl());
                 return;
             }
             
-            site = transactionTemplate.execute(status -> siteRepository.save(
+            SiteGeneration generation = live == null ? SiteGeneration.LIVE : SiteGeneration.SHADOW;
+            site = incremental ? live : transactionTemplate.execute(status -> siteRepository.save(
                     Site.builder()
                             .url(siteConfig.getUrl())
                             .name(siteConfig.getName())
                             .status(SiteStatus.INDEXING)
                             .statusTime(LocalDateTime.now())
+                            .generation(generation)
                             .build()
             ));
             if (site == null || site.getId() == null) {
                 throw new IllegalStateException("Не удалось создать запись Site перед индексацией");
             }
             
-            Set<String> visited = ConcurrentHashMap.newKeySet();
-            ForkJoinPool pool = new ForkJoinPool(determineParallelism());
-            activePools.put(siteConfig.getUrl(), pool);
-            pool.invoke(new SiteIndexingTask(site, site.getUrl(), visited, pageRepository, siteRepository, config,
-                    indexingService, lemmaFinder, lemmaRepository, indexRepository, lemmaIndexingService));
+            SiteLemmaBuffer lemmaBuffer = config.getLemmaWriteMode() == LemmaWriteMode.BULK && !incremental
+                    ? new SiteLemmaBuffer(config.getBulkFlushPostings())
+                    : null;
+            crawl(site, siteConfig, indexingService, lemmaBuffer, incremental);
+            if (lemmaBuffer != null) {
+                lemmaIndexingService.flushBuffer(site, lemmaBuffer, true);
+            }
+            log.info("Обход сайта {} завершён, запись в БД: {}; {}; {}; {}", siteConfig.getUrl(),
+                    indexingMetrics.summary(), lemmaFinder.cacheSummary(), morphologyProvider.summary(),
+                    pageContentStore.summary());
             
             Integer siteId = site.getId();
-            transactionTemplate.executeWithoutResult(status -> {
+            Integer liveId = live == null || incremental ? null : live.getId();
+            Boolean swapped = transactionTemplate.execute(status -> {
                 Site current = siteRepository.findById(siteId).orElse(null);
                 if (current == null) {
-                    return;
+                    return false;
                 }
-                if (!indexingService.isStopRequested()) {
+                boolean completed = !indexingService.isStopRequested();
+                if (completed) {
                     current.setStatus(SiteStatus.INDEXED);
                     current.setLastError(null);
                 }
                 current.setStatusTime(LocalDateTime.now());
+                boolean swap = completed && liveId != null;
+                if (swap) {
+                    current.setGeneration(SiteGeneration.LIVE);
+                    siteRepository.findById(liveId).ifPresent(previous -> {
+                        previous.setGeneration(SiteGeneration.RETIRED);
+                        siteRepository.save(previous);
+                    });
+                }
                 siteRepository.save(current);
+                indexGenerations.bump(siteId);
+                return swap;
             });
+            if (liveId != null) {
+                if (Boolean.TRUE.equals(swapped)) {
+                    log.info("Поколения сайта {} переключены: поиск идёт по id {}, id {} удаляется в фоне",
+                            siteConfig.getUrl(), siteId, liveId);
+                    sitePurgeService.purgeInBackground(liveId);
+                } else {
+                    log.info("Переиндексация сайта {} не завершена, поиск остаётся на id {}", siteConfig.getUrl(),
+                            liveId);
+                    sitePurgeService.purgeInBackground(siteId);
+                }
+            }
         } catch (Exception e) {
             log.error("Критическая ошибка при индексации сайта {}: {}",
                     siteConfig.getUrl(), e.getMessage(), e);
-            if (site != null && site.getId() != null) {
+            if (incremental) {
+                recordReindexFailure(live.getId(), e);
+            } else if (site != null && site.getId() != null && live != null) {
+                sitePurgeService.purgeInBackground(site.getId());
+                recordReindexFailure(live.getId(), e);
+            } else if (site != null && site.getId() != null) {
                 try {
                     Site currentSite = siteRepository.findById(site.getId()).orElse(null);
                     if (currentSite != null) {
@@ -151,103 +225,105 @@ public class AsyncSiteIndexingService {
                 }
             }
             throw e;
+        } finally {
+            shadowReindexes.end(siteConfig.getUrl());
         }
     }
 
     /**
-     * Останавливает все активные {@link ForkJoinPool}.
+     * Проверяет, нужно ли переводить запись сайта в статус {@link SiteStatus#FAILED} при остановке или ошибке
+     * индексации.
+     *
+     * <p>Теневые и заменённые поколения удаляются, а текущее проиндексированное поколение в режимах
+     * {@link ReindexMode#SHADOW} и {@link ReindexMode#INCREMENTAL} продолжает обслуживать поиск, поэтому статус
+     * меняется только у текущего поколения, которое ещё не проиндексировано.</p>
+     *
+     * @param site {@link Site} запись сайта
+     * @return true, если статус нужно сменить на {@link SiteStatus#FAILED}
      */
-    public void stopAllForkJoinPools() {
-        log.info("🛑 Останавливаем {} активных ForkJoinPool...", activePools.size());
-        Map<String, ForkJoinPool> poolsCopy = new HashMap<>(activePools);
-        int stoppedCount = 0;
-        for (Map.Entry<String, ForkJoinPool> entry : poolsCopy.entrySet()) {
-            String siteUrl = entry.getKey();
-            ForkJoinPool pool = entry.getValue();
-            if (pool != null && !pool.isShutdown()) {
-                try {
-                    log.info("Останавливаем ForkJoinPool для сайта: {}", siteUrl);
-                    pool.shutdownNow();
-                    pool.getQueuedSubmissionCount();
-                    boolean terminated = pool.awaitTermination(3, TimeUnit.SECONDS);
-                    if (terminated) {
-                        log.info("ForkJoinPool для {} успешно остановлен", siteUrl);
-                        stoppedCount++;
-                    } else {
-                        log.info("ForkJoinPool для {} не завершился вовремя", siteUrl);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.error("Прерывание при остановке ForkJoinPool для {}", siteUrl, e);
-                } catch (Exception e) {
-                    log.error("Ошибка при остановке ForkJoinPool для {}: {}", siteUrl, e.getMessage());
-                }
-            }
-            activePools.remove(siteUrl);
+    public boolean failsOnAbort(Site site) {
+        if (!site.isLive()) {
+            return false;
         }
-        log.info("✅ Остановлено {} из {} ForkJoinPool", stoppedCount, poolsCopy.size());
-        interruptAllForkJoinThreads();
+        return config.getReindexMode() == ReindexMode.PURGE || site.getStatus() != SiteStatus.INDEXED;
     }
 
     /**
-     * Пытается прервать потоки ForkJoinPool (best effort).
+     * Записывает ошибку переиндексации в текущее поколение сайта, не меняя его статус.
+     *
+     * @param liveId ID текущего поколения
+     * @param e {@link Exception} ошибка
      */
-    private void interruptAllForkJoinThreads() {
+    private void recordReindexFailure(int liveId, Exception e) {
         try {
-            Set<Thread> threads = Thread.getAllStackTraces().keySet();
-            int interrupted = 0;
-            for (Thread thread : threads) {
-                if (thread.getName().contains("ForkJoinPool") || thread.getName().contains("ForkJoinWorkerThread")) {
-                    try {
-                        thread.interrupt();
-                        interrupted++;
-                    } catch (Exception e) {
-                        log.error("Не удалось прервать поток {}: {}", thread.getName(), e.getMessage());
-                    }
-                }
-            }
-            log.info("Прервано {} потоков ForkJoinPool", interrupted);
-        } catch (Exception e) {
-            log.error("Ошибка при прерывании потоков: {}", e.getMessage());
+            siteRepository.findById(liveId).ifPresent(current -> {
+                current.setLastError("Переиндексация не завершена: " + e.getMessage());
+                siteRepository.save(current);
+            });
+        } catch (Exception ex) {
+            log.error("Не удалось записать ошибку переиндексации сайта {}: {}", liveId, ex.getMessage(), ex);
         }
     }
 
     /**
-     * Удаляет из БД все данные по сайту с указанным URL.
+     * Обходит страницы сайта конвейером {@link CrawlPipeline} и дожидается завершения обхода.
      *
-     * @param url {@link String} базовый URL сайта
+     * @param site {@link Site} сайт
+     * @param siteConfig {@link SiteConfig} конфигурация сайта
+     * @param indexingService {@link IndexingService} сервис состояния индексации
+     * @param lemmaBuffer {@link SiteLemmaBuffer} буфер лемм сайта или {@code null} в режиме {@link LemmaWriteMode#PAGE}
+     * @param incremental true для повторного обхода по сохранённым валидаторам и хэшам страниц
      */
-    public void clearSiteData(String url) {
-        List<Site> sites = siteRepository.findAllByUrl(url);
-        if (sites.isEmpty()) {
-            log.debug("Сайт {} не найден в БД, очистка не требуется", url);
-            return;
-        }
-
-        try {
-            log.info("Начинаем очистку данных для сайта: {} (найдено записей: {})", url, sites.size());
-            
-            for (Site site : sites) {
-                List<Page> pages = pageRepository.findBySite(site);
-                for (Page page : pages) {
-                    indexRepository.deleteByPage(page);
-                }
+    private void crawl(Site site, SiteConfig siteConfig, IndexingService indexingService, SiteLemmaBuffer lemmaBuffer,
+                       boolean incremental) {
+        CrawlFrontier frontier = new CrawlFrontier(config.getFrontier());
+        frontier.offer(site.getUrl(), 0);
+        Map<String, PageState> knownPages = null;
+        if (incremental) {
+            knownPages = new ConcurrentHashMap<>();
+            for (PageState state : pageRepository.findStatesBySite(site)) {
+                knownPages.put(state.path(), state);
             }
-            siteRepository.deleteAll(sites);
-            siteRepository.flush();
-            log.info("Данные сайта {} очищены успешно (удалено записей: {})", url, sites.size());
-        } catch (Exception e) {
-            log.error("Ошибка при очистке данных сайта {}: {}", url, e.getMessage(), e);
-            throw new RuntimeException("Не удалось очистить данные сайта: " + url, e);
+        }
+        SiteIndexingTask task = new SiteIndexingTask(site, frontier, pageRepository, siteRepository,
+                indexingService, documentProcessor, lemmaIndexingService, lemmaBuffer, indexingMetrics, pageContentStore,
+                pageIndexingService, knownPages);
+        CrawlPipeline pipeline = new CrawlPipeline(site, frontier, task, pageFetcher, config,
+                config.fetchConcurrencyFor(siteConfig));
+        activeCrawls.put(site.getUrl(), pipeline);
+        boolean drained = pipeline.run();
+        if (incremental) {
+            task.removeUnreachedPages(drained);
+            log.info("Повторный обход сайта {}: {}", site.getUrl(), task.recrawlSummary());
         }
     }
 
     /**
-     * Возвращает уровень параллелизма для обхода ссылок.
-     *
-     * @return параллелизм
+     * Останавливает обход всех сайтов: закрывает очереди обхода и прерывает рабочие потоки.
      */
-    private static int determineParallelism() {
-        return 2;
+    public void stopAllCrawlers() {
+        log.info("🛑 Останавливаем обход {} сайтов...", activeCrawls.size());
+        Map<String, CrawlPipeline> crawlsCopy = new HashMap<>(activeCrawls);
+        int stoppedCount = 0;
+        for (Map.Entry<String, CrawlPipeline> entry : crawlsCopy.entrySet()) {
+            String siteUrl = entry.getKey();
+            CrawlPipeline pipeline = entry.getValue();
+            try {
+                pipeline.stop();
+                if (pipeline.awaitTermination(3, TimeUnit.SECONDS)) {
+                    log.info("Обход сайта {} успешно остановлен", siteUrl);
+                    stoppedCount++;
+                } else {
+                    log.info("Обход сайта {} не завершился вовремя", siteUrl);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Прерывание при остановке обхода сайта {}", siteUrl, e);
+            } catch (Exception e) {
+                log.error("Ошибка при остановке обхода сайта {}: {}", siteUrl, e.getMessage());
+            }
+            activeCrawls.remove(siteUrl);
+        }
+        log.info("✅ Остановлен обход {} из {} сайтов", stoppedCount, crawlsCopy.size());
     }
 }
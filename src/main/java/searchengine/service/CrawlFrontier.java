@@ -0,0 +1,217 @@
+package searchengine.service;
+
+import searchengine.config.FrontierConfig;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Очередь обхода сайта (crawl frontier) с ограниченным размером и порядком обхода в ширину.
+ *
+ * <p>URL выдаются по возрастанию глубины (сначала все страницы уровня N, затем N+1), внутри уровня — в порядке
+ * добавления. Повторы отсекаются до постановки в очередь фильтром {@link UrlSeenFilter}, поэтому память под
+ * посещённые URL не растёт вместе с сайтом. Если очередь заполнена или превышен лимит глубины/уровня, URL
+ * отбрасывается и не помечается как посещённый — его можно будет добавить позже, когда он встретится снова.</p>
+ *
+ * <p>Обход завершён, когда очередь пуста и ни один рабочий поток не обрабатывает URL.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+public class CrawlFrontier {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TreeMap<Integer, ArrayDeque<String>> queues = new TreeMap<>();
+    private final Map<Integer, Integer> acceptedPerDepth = new HashMap<>();
+    private final UrlSeenFilter seen;
+    private final int maxQueueSize;
+    private final int maxDepth;
+    private final int maxUrlsPerDepth;
+
+    private int size;
+    private int inFlight;
+    private boolean closed;
+    private long accepted;
+    private long duplicates;
+    private long droppedQueueFull;
+    private long droppedByLimits;
+
+    /**
+     * Создаёт пустую очередь обхода.
+     *
+     * @param config {@link FrontierConfig} настройки очереди
+     */
+    public CrawlFrontier(FrontierConfig config) {
+        this.seen = new UrlSeenFilter(config.getExpectedUrls(), config.getFalsePositiveRate());
+        this.maxQueueSize = Math.max(1, config.getMaxQueueSize());
+        this.maxDepth = config.getMaxDepth();
+        this.maxUrlsPerDepth = config.getMaxUrlsPerDepth();
+    }
+
+    /**
+     * Ставит URL в очередь, если он ещё не встречался и не нарушает ограничения очереди.
+     *
+     * @param url {@link String} абсолютный URL
+     * @param depth глубина страницы (0 — главная страница сайта)
+     * @return true, если URL добавлен в очередь
+     */
+    public boolean offer(String url, int depth) {
+        String key = normalize(url);
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (seen.mightContain(key)) {
+                duplicates++;
+                return false;
+            }
+            if ((maxDepth > 0 && depth > maxDepth)
+                    || (maxUrlsPerDepth > 0 && acceptedPerDepth.getOrDefault(depth, 0) >= maxUrlsPerDepth)) {
+                droppedByLimits++;
+                return false;
+            }
+            if (size >= maxQueueSize) {
+                droppedQueueFull++;
+                return false;
+            }
+            seen.add(key);
+            queues.computeIfAbsent(depth, d -> new ArrayDeque<>()).addLast(url);
+            acceptedPerDepth.merge(depth, 1, Integer::sum);
+            size++;
+            accepted++;
+            changed.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Забирает следующий URL для обработки, ожидая, пока он появится.
+     *
+     * <p>После обработки URL рабочий поток обязан вызвать {@link #complete()}.</p>
+     *
+     * @return {@link CrawlUrl} следующий URL или {@code null}, если обход завершён или остановлен
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public CrawlUrl take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed) {
+                if (size > 0) {
+                    Map.Entry<Integer, ArrayDeque<String>> level = queues.firstEntry();
+                    String url = level.getValue().pollFirst();
+                    if (level.getValue().isEmpty()) {
+                        queues.remove(level.getKey());
+                    }
+                    size--;
+                    inFlight++;
+                    return new CrawlUrl(url, level.getKey());
+                }
+                if (inFlight == 0) {
+                    closed = true;
+                    changed.signalAll();
+                    return null;
+                }
+                changed.await();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Отмечает, что рабочий поток закончил обработку URL, полученного через {@link #take()}.
+     */
+    public void complete() {
+        lock.lock();
+        try {
+            inFlight--;
+            if (size == 0 && inFlight == 0) {
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Останавливает обход: ожидающие потоки получают {@code null}, новые URL не принимаются.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            queues.clear();
+            size = 0;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Проверяет, отбрасывались ли ссылки по лимитам или из-за полной очереди, то есть обошёл ли обход
+     * не все найденные страницы сайта.
+     *
+     * @return true, если хотя бы одна ссылка была отброшена
+     */
+    public boolean isTruncated() {
+        lock.lock();
+        try {
+            return droppedByLimits > 0 || droppedQueueFull > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает краткую сводку по очереди для записи в лог.
+     *
+     * @return {@link String} сводка
+     */
+    public String summary() {
+        lock.lock();
+        try {
+            return String.format("принято URL %d, повторов %d, отброшено по лимитам %d, отброшено при полной очереди %d, "
+                            + "фильтр посещённых %d КБ",
+                    accepted, duplicates, droppedByLimits, droppedQueueFull, seen.sizeInBytes() / 1024);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Нормализует URL для проверки повторов: отбрасывает фрагмент и завершающие слеши.
+     *
+     * @param url {@link String} URL
+     * @return {@link String} ключ URL
+     */
+    private static String normalize(String url) {
+        String key = url.trim();
+        int hash = key.indexOf('#');
+        if (hash >= 0) {
+            key = key.substring(0, hash);
+        }
+        int end = key.length();
+        while (end > 0 && key.charAt(end - 1) == '/') {
+            end--;
+        }
+        return key.substring(0, end);
+    }
+
+    /**
+     * URL в очереди обхода.
+     *
+     * @param url абсолютный URL
+     * @param depth глубина страницы
+     */
+    public record CrawlUrl(String url, int depth) {
+    }
+}
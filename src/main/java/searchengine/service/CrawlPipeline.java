@@ -0,0 +1,261 @@
+package searchengine.service;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.IndexingConfig;
+import searchengine.config.PipelineConfig;
+import searchengine.model.entity.Site;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Конвейер обхода одного сайта: загрузка → разбор → лемматизация → запись в БД.
+ *
+ * <p>Загрузка выполняется асинхронным {@link PageFetcher}: поток обхода берёт URL из {@link CrawlFrontier}
+ * и запускает запрос, если число запросов к сайту не превышает {@code fetch-concurrency}. Остальные стадии —
+ * {@link PipelineStage} с собственным пулом потоков и ограниченной очередью
+ * ({@code indexing-settings.pipeline.*}), поэтому сетевые, CPU- и DB-ресурсы настраиваются раздельно.
+ * Разрешение на запрос освобождается, когда страница передана в стадию лемматизации: заполненные очереди
+ * следующих стадий останавливают загрузку новых страниц.</p>
+ *
+ * <p>Каждый URL, полученный из очереди обхода, отмечается обработанным ({@link CrawlFrontier#complete()})
+ * ровно один раз: после записи в БД или на той стадии, где страница была отброшена.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Slf4j
+public class CrawlPipeline {
+
+    private final Site site;
+    private final CrawlFrontier frontier;
+    private final SiteIndexingTask task;
+    private final PageFetcher fetcher;
+    private final int fetchConcurrency;
+    private final long fetchTimeoutMs;
+    private final long reportIntervalNanos;
+    private final Semaphore fetchPermits;
+    private final LongAdder fetched = new LongAdder();
+    private final long startedAt = System.nanoTime();
+    private final PipelineStage parseStage;
+    private final PipelineStage lemmatizeStage;
+    private final PipelineStage persistStage;
+    private volatile boolean stopped;
+
+    /**
+     * Создаёт конвейер и запускает пулы потоков его стадий.
+     *
+     * @param site {@link Site} сайт
+     * @param frontier {@link CrawlFrontier} очередь обхода сайта
+     * @param task {@link SiteIndexingTask} обработка страниц сайта
+     * @param fetcher {@link PageFetcher} загрузчик страниц
+     * @param config {@link IndexingConfig} настройки индексации
+     * @param fetchConcurrency максимальное количество одновременных запросов к сайту
+     */
+    public CrawlPipeline(Site site, CrawlFrontier frontier, SiteIndexingTask task, PageFetcher fetcher,
+                         IndexingConfig config, int fetchConcurrency) {
+        PipelineConfig pipeline = config.getPipeline();
+        String prefix = "crawler-" + site.getId();
+        this.site = site;
+        this.frontier = frontier;
+        this.task = task;
+        this.fetcher = fetcher;
+        this.fetchConcurrency = fetchConcurrency;
+        this.fetchTimeoutMs = config.getFetchTimeoutMs();
+        this.reportIntervalNanos = TimeUnit.SECONDS.toNanos(Math.max(1, pipeline.getReportIntervalSeconds()));
+        this.fetchPermits = new Semaphore(fetchConcurrency);
+        this.parseStage = new PipelineStage("parse", prefix, pipeline.getParse());
+        this.lemmatizeStage = new PipelineStage("lemmatize", prefix, pipeline.getLemmatize());
+        this.persistStage = new PipelineStage("persist", prefix, pipeline.getPersist());
+    }
+
+    /**
+     * Выполняет обход сайта в текущем потоке и возвращает управление, когда очередь обхода опустеет
+     * или обход будет остановлен.
+     *
+     * @return true, если обход прошёл до конца: очередь опустела и все запросы завершились; false, если обход
+     * остановлен, прерван или не дождался завершения запросов
+     */
+    public boolean run() {
+        long lastReport = System.nanoTime();
+        boolean drained = false;
+        try {
+            CrawlFrontier.CrawlUrl next;
+            while ((next = frontier.take()) != null) {
+                fetchPermits.acquire();
+                fetch(next);
+                if (System.nanoTime() - lastReport >= reportIntervalNanos) {
+                    lastReport = System.nanoTime();
+                    log.info("Обход сайта {}: {}", site.getUrl(), summary());
+                }
+            }
+            if (!stopped) {
+                drained = fetchPermits.tryAcquire(fetchConcurrency, fetchTimeoutMs * 2, TimeUnit.MILLISECONDS);
+                if (!drained) {
+                    log.info("Не дождались завершения запросов к сайту {}", site.getUrl());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Обход сайта {} прерван", site.getUrl());
+        } finally {
+            stop();
+        }
+        log.info("Обход сайта {} завершён: {}; очередь обхода: {}", site.getUrl(), summary(), frontier.summary());
+        return drained;
+    }
+
+    /**
+     * Останавливает обход: закрывает очередь обхода и прерывает потоки всех стадий. Страницы, отброшенные
+     * из очередей стадий, отмечаются обработанными; страница из очереди разбора освобождает и разрешение на запрос
+     * (после передачи в стадию лемматизации оно уже освобождено). Завершения запросов, которые ещё выполняются,
+     * поток обхода не ждёт.
+     */
+    public void stop() {
+        stopped = true;
+        frontier.close();
+        parseStage.shutdownNow();
+        lemmatizeStage.shutdownNow();
+        persistStage.shutdownNow();
+    }
+
+    /**
+     * Ожидает завершения потоков стадий после {@link #stop()}.
+     *
+     * @param timeout время ожидания
+     * @param unit {@link TimeUnit} единица времени
+     * @return true, если все потоки завершились
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean terminated = true;
+        for (PipelineStage stage : new PipelineStage[]{parseStage, lemmatizeStage, persistStage}) {
+            terminated &= stage.awaitTermination(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        return terminated;
+    }
+
+    /**
+     * Возвращает сводку по стадиям конвейера: глубину очередей и пропускную способность.
+     *
+     * @return {@link String} сводка
+     */
+    public String summary() {
+        double seconds = Math.max(1L, System.nanoTime() - startedAt) / 1_000_000_000d;
+        return String.format("fetch: запросов %d/%d, загружено %d (%.1f/с); %s; %s; %s",
+                fetchConcurrency - fetchPermits.availablePermits(), fetchConcurrency, fetched.sum(),
+                fetched.sum() / seconds, parseStage.summary(), lemmatizeStage.summary(), persistStage.summary());
+    }
+
+    /**
+     * Запускает загрузку страницы; ответ передаётся в стадию разбора.
+     *
+     * @param next {@link CrawlFrontier.CrawlUrl} URL из очереди обхода
+     */
+    private void fetch(CrawlFrontier.CrawlUrl next) {
+        try {
+            fetcher.fetch(next.url(), task.knownState(next.url())).whenComplete((page, error) -> {
+                fetched.increment();
+                handOff(parseStage, next, true, false, () -> {
+                    if (error != null) {
+                        task.fail(next, error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error);
+                        done(true);
+                    } else {
+                        parse(next, page);
+                    }
+                });
+            });
+        } catch (RuntimeException e) {
+            task.fail(next, e);
+            done(true);
+        }
+    }
+
+    /**
+     * Стадия разбора: разбирает страницу и передаёт результат в стадию лемматизации.
+     *
+     * @param next {@link CrawlFrontier.CrawlUrl} URL из очереди обхода
+     * @param page {@link PageFetcher.FetchedPage} ответ сервера
+     */
+    private void parse(CrawlFrontier.CrawlUrl next, PageFetcher.FetchedPage page) {
+        DocumentProcessor.ParsedDocument document;
+        try {
+            document = task.parse(next, page);
+        } catch (Exception e) {
+            task.fail(next, e);
+            done(true);
+            return;
+        }
+        if (document == null) {
+            done(true);
+            return;
+        }
+        handOff(lemmatizeStage, next, true, true, () -> lemmatize(next, document, page));
+    }
+
+    /**
+     * Стадия лемматизации: собирает леммы и передаёт страницу в стадию записи.
+     *
+     * @param next {@link CrawlFrontier.CrawlUrl} URL из очереди обхода
+     * @param document {@link DocumentProcessor.ParsedDocument} разобранная страница
+     * @param page {@link PageFetcher.FetchedPage} ответ сервера
+     */
+    private void lemmatize(CrawlFrontier.CrawlUrl next, DocumentProcessor.ParsedDocument document,
+                           PageFetcher.FetchedPage page) {
+        Map<String, Integer> lemmaCounts = task.lemmatize(next.url(), document);
+        handOff(persistStage, next, false, false, () -> {
+            try {
+                task.persist(next.url(), document, page, lemmaCounts);
+            } finally {
+                done(false);
+            }
+        });
+    }
+
+    /**
+     * Передаёт страницу в следующую стадию, ожидая места в её очереди. Если стадия остановлена или поток прерван,
+     * страница отбрасывается.
+     *
+     * <p>Разрешение на запрос освобождается ровно один раз: при передаче ({@code releasePermit}), при отбрасывании
+     * страницы здесь или при её отбрасывании из очереди стадии, если разрешение передано вместе со страницей.</p>
+     *
+     * @param stage {@link PipelineStage} следующая стадия
+     * @param next {@link CrawlFrontier.CrawlUrl} URL из очереди обхода
+     * @param holdsPermit true, если страница ещё держит разрешение на запрос
+     * @param releasePermit true, если разрешение нужно освободить сразу после передачи страницы в стадию
+     * @param action {@link Runnable} обработка страницы в стадии
+     */
+    private void handOff(PipelineStage stage, CrawlFrontier.CrawlUrl next, boolean holdsPermit,
+                         boolean releasePermit, Runnable action) {
+        boolean passesPermit = holdsPermit && !releasePermit;
+        try {
+            stage.submit(action, () -> done(passesPermit));
+            if (holdsPermit && releasePermit) {
+                fetchPermits.release();
+            }
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            log.debug("Стадия остановлена, страница {} отброшена", next.url());
+        }
+        done(holdsPermit);
+    }
+
+    /**
+     * Отмечает URL обработанным и при необходимости освобождает разрешение на запрос.
+     *
+     * @param holdsPermit true, если страница ещё держит разрешение на запрос
+     */
+    private void done(boolean holdsPermit) {
+        frontier.complete();
+        if (holdsPermit) {
+            fetchPermits.release();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package searchengine.service;
+
+import lombok.RequiredArgsConstructor;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Обработка HTML-страницы за один разбор Jsoup: HTML для сохранения, заголовок, видимый текст и ссылки.
+ *
+ * <p>Леммы собираются из уже извлечённого текста ({@link #lemmatize(ParsedDocument)}), без повторного разбора HTML.
+ * Используется обходом сайта, индексацией отдельной страницы и поиском.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Service
+@RequiredArgsConstructor
+public class DocumentProcessor {
+
+    /**
+     * Максимальная длина заголовка (размер столбца {@code page.title}).
+     */
+    public static final int MAX_TITLE_LENGTH = 512;
+
+    private final LemmaFinder lemmaFinder;
+
+    /**
+     * Разбирает загруженное тело ответа.
+     *
+     * @param body {@code byte[]} тело ответа
+     * @param charset {@link String} кодировка из заголовков или {@code null} (определяется по {@code <meta>})
+     * @param baseUri {@link String} URL страницы для разрешения относительных ссылок
+     * @return {@link ParsedDocument} результат разбора
+     */
+    public ParsedDocument parse(byte[] body, String charset, String baseUri) {
+        try {
+            return extract(Jsoup.parse(new ByteArrayInputStream(body), charset, baseUri));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Разбирает HTML-код страницы.
+     *
+     * @param html {@link String} HTML-код
+     * @param baseUri {@link String} URL страницы для разрешения относительных ссылок
+     * @return {@link ParsedDocument} результат разбора
+     */
+    public ParsedDocument parse(String html, String baseUri) {
+        return extract(Jsoup.parse(html == null ? "" : html, baseUri));
+    }
+
+    /**
+     * Собирает леммы из видимого текста разобранной страницы.
+     *
+     * @param document {@link ParsedDocument} результат разбора
+     * @return {@link Map}<{@link String}, {@link Integer}> карта {@code лемма -> количество}
+     */
+    public Map<String, Integer> lemmatize(ParsedDocument document) {
+        return lemmaFinder.collectLemmasFromText(document.text());
+    }
+
+    /**
+     * Извлекает из документа всё, что нужно индексации и поиску.
+     *
+     * @param doc {@link Document} документ Jsoup
+     * @return {@link ParsedDocument} результат разбора
+     */
+    private static ParsedDocument extract(Document doc) {
+        List<String> links = new ArrayList<>();
+        for (Element link : doc.select("a[href]")) {
+            String absUrl = link.attr("abs:href");
+            if (!absUrl.isEmpty()) {
+                links.add(absUrl);
+            }
+        }
+        String title = extractTitle(doc);
+        if (title.length() > MAX_TITLE_LENGTH) {
+            title = title.substring(0, MAX_TITLE_LENGTH);
+        }
+        return new ParsedDocument(doc.html(), title, doc.text().trim(), links);
+    }
+
+    /**
+     * Извлекает заголовок страницы (title или h1).
+     *
+     * @param doc {@link Document} документ страницы
+     * @return {@link String} заголовок
+     */
+    private static String extractTitle(Document doc) {
+        String title = doc.title();
+        if (StringUtils.hasText(title)) {
+            return title.trim();
+        }
+        Element h1 = doc.selectFirst("h1");
+        if (h1 != null && StringUtils.hasText(h1.text())) {
+            return h1.text().trim();
+        }
+        return "";
+    }
+
+    /**
+     * Результат разбора страницы.
+     *
+     * @param html HTML-код страницы (для сохранения в {@code page.content})
+     * @param title заголовок страницы
+     * @param text видимый текст страницы (пробельные символы схлопнуты)
+     * @param links абсолютные URL ссылок страницы
+     */
+    public record ParsedDocument(String html, String title, String text, List<String> links) {
+    }
+}
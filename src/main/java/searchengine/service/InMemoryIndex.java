@@ -0,0 +1,395 @@
+package searchengine.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SearchConfig;
+import searchengine.model.entity.Site;
+import searchengine.model.enums.SearchEngineType;
+import searchengine.repository.IndexSearchRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Инвертированный индекс в памяти: для каждого сайта хранит списки вхождений лемм ({@link PostingList}).
+ *
+ * <p>Индекс загружается из таблиц {@code lemma}/{@code search_index} после старта приложения и поддерживается
+ * в актуальном состоянии сервисами индексации. Изменения применяются после фиксации транзакции, в которой они
+ * были записаны в БД. Работает только при {@code search-settings.engine: memory}, иначе все методы ничего не делают.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class InMemoryIndex {
+
+    private static final int LOAD_CHUNK_SIZE = 10_000;
+
+    private final SearchConfig searchConfig;
+    private final SiteRepository siteRepository;
+    private final IndexSearchRepository indexSearchRepository;
+    private final PageRepository pageRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    /**
+     * Возвращает признак, что индекс в памяти используется для поиска.
+     *
+     * @return true, если включён движок {@link SearchEngineType#MEMORY}
+     */
+    public boolean isEnabled() {
+        return searchConfig.getEngine() == SearchEngineType.MEMORY;
+    }
+
+    /**
+     * Загружает индекс всех сайтов из БД после старта приложения (только текущие поколения сайтов).
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!isEnabled()) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        List<Site> snapshot = siteRepository.findAll().stream().filter(Site::isLive).toList();
+        for (Site site : snapshot) {
+            sites.computeIfAbsent(site.getId(), id -> new SiteIndex(false));
+        }
+        long postings = 0;
+        for (Site site : snapshot) {
+            try {
+                postings += loadSite(site.getId());
+            } catch (Exception e) {
+                log.error("Не удалось загрузить индекс сайта {} в память: {}", site.getUrl(), e.getMessage(), e);
+            }
+        }
+        sites.values().forEach(index -> index.ready = true);
+        loaded = true;
+        log.info("Индекс в памяти загружен: сайтов {}, вхождений {}, за {} мс",
+                snapshot.size(), postings, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Проверяет, можно ли искать по сайту в памяти (индекс сайта полностью загружен).
+     *
+     * @param siteId ID сайта
+     * @return true, если индекс сайта готов
+     */
+    public boolean isReady(int siteId) {
+        if (!isEnabled()) {
+            return false;
+        }
+        SiteIndex index = sites.get(siteId);
+        return index == null ? loaded : index.ready;
+    }
+
+    /**
+     * Находит страницы сайта, содержащие все леммы запроса, пересекая списки вхождений.
+     *
+     * @param siteId ID сайта
+     * @param lemmaTexts {@link Collection}<{@link String}> тексты лемм запроса
+     * @param collector {@link TopKCollector} отбор лучших страниц
+     */
+    public void collectHits(int siteId, Collection<String> lemmaTexts, TopKCollector collector) {
+        SiteIndex index = sites.get(siteId);
+        if (index == null || lemmaTexts.isEmpty()) {
+            return;
+        }
+        index.lock.readLock().lock();
+        try {
+            int threshold = (int) Math.ceil(index.pageCount * SearchIndexEngine.MAX_FREQUENCY_RATIO);
+            List<PostingList> lists = new ArrayList<>(lemmaTexts.size());
+            for (String lemma : lemmaTexts) {
+                PostingList list = index.postings.get(lemma);
+                if (list == null || list.size() == 0) {
+                    return;
+                }
+                if (threshold <= 0 || list.size() <= threshold) {
+                    lists.add(list);
+                }
+            }
+            if (lists.isEmpty()) {
+                return;
+            }
+            lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+            intersect(siteId, lists, collector);
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Учитывает новую страницу сайта в количестве страниц (после фиксации транзакции), в том числе страницу
+     * без лемм: порог частых лемм считается от всех страниц сайта, как в {@link SqlSearchIndexEngine}.
+     *
+     * @param siteId ID сайта
+     * @param pageId ID страницы
+     */
+    public void onPageStored(int siteId, int pageId) {
+        if (!isEnabled()) {
+            return;
+        }
+        afterCommit(() -> {
+            SiteIndex index = sites.computeIfAbsent(siteId, id -> new SiteIndex(loaded));
+            index.lock.writeLock().lock();
+            try {
+                index.addPage(pageId);
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Исключает удалённую страницу из количества страниц сайта (после фиксации транзакции). Вхождения страницы
+     * к этому моменту уже удалены через {@link #onPageUpdated(int, int, Map, Collection)}.
+     *
+     * @param siteId ID сайта
+     * @param pageId ID страницы
+     */
+    public void onPageDeleted(int siteId, int pageId) {
+        if (!isEnabled()) {
+            return;
+        }
+        afterCommit(() -> {
+            SiteIndex index = sites.get(siteId);
+            if (index == null) {
+                return;
+            }
+            index.lock.writeLock().lock();
+            try {
+                index.removePage(pageId);
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Добавляет в индекс вхождения проиндексированной страницы (после фиксации транзакции).
+     *
+     * @param siteId ID сайта
+     * @param pageId ID страницы
+     * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> карта {@code лемма -> количество} для страницы
+     */
+    public void onPageIndexed(int siteId, int pageId, Map<String, Integer> lemmaCounts) {
+        if (!isEnabled() || lemmaCounts.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> {
+            SiteIndex index = sites.computeIfAbsent(siteId, id -> new SiteIndex(loaded));
+            index.lock.writeLock().lock();
+            try {
+                for (Map.Entry<String, Integer> entry : lemmaCounts.entrySet()) {
+                    index.postings.computeIfAbsent(entry.getKey(), k -> new PostingList())
+                            .put(pageId, entry.getValue().floatValue());
+                }
+                index.addPage(pageId);
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Применяет к индексу разницу между версиями страницы (после фиксации транзакции): добавляет или обновляет
+     * вхождения изменившихся лемм и удаляет вхождения лемм, которых на странице больше нет.
+     *
+     * @param siteId ID сайта
+     * @param pageId ID страницы
+     * @param upserts {@link Map}<{@link String}, {@link Integer}> новые и изменившиеся леммы с количеством на странице
+     * @param removed {@link Collection}<{@link String}> леммы, удалённые со страницы
+     */
+    public void onPageUpdated(int siteId, int pageId, Map<String, Integer> upserts, Collection<String> removed) {
+        if (!isEnabled() || (upserts.isEmpty() && removed.isEmpty())) {
+            return;
+        }
+        afterCommit(() -> {
+            SiteIndex index = sites.computeIfAbsent(siteId, id -> new SiteIndex(loaded));
+            index.lock.writeLock().lock();
+            try {
+                for (String lemma : removed) {
+                    PostingList list = index.postings.get(lemma);
+                    if (list != null && list.remove(pageId) && list.size() == 0) {
+                        index.postings.remove(lemma);
+                    }
+                }
+                for (Map.Entry<String, Integer> entry : upserts.entrySet()) {
+                    index.postings.computeIfAbsent(entry.getKey(), k -> new PostingList())
+                            .put(pageId, entry.getValue().floatValue());
+                }
+                index.addPage(pageId);
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Удаляет из памяти индекс сайта целиком (после фиксации транзакции).
+     *
+     * @param siteId ID сайта
+     */
+    public void onSiteRemoved(int siteId) {
+        if (!isEnabled()) {
+            return;
+        }
+        afterCommit(() -> sites.remove(siteId));
+    }
+
+    /**
+     * Загружает ID страниц сайта и его вхождения из БД (вхождения — порциями по {@value #LOAD_CHUNK_SIZE} строк).
+     *
+     * @param siteId ID сайта
+     * @return количество загруженных вхождений
+     */
+    private long loadSite(int siteId) {
+        SiteIndex index = sites.computeIfAbsent(siteId, id -> new SiteIndex(false));
+        long[] count = new long[1];
+        List<Integer> pageIds = pageRepository.findIdsBySiteId(siteId);
+        index.lock.writeLock().lock();
+        try {
+            pageIds.forEach(index::addPage);
+        } finally {
+            index.lock.writeLock().unlock();
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Object[]> rows = indexSearchRepository.streamPostingsBySite(siteId)) {
+                Iterator<Object[]> it = rows.iterator();
+                while (it.hasNext()) {
+                    index.lock.writeLock().lock();
+                    try {
+                        for (int i = 0; i < LOAD_CHUNK_SIZE && it.hasNext(); i++) {
+                            Object[] row = it.next();
+                            String lemma = (String) row[0];
+                            int pageId = ((Number) row[1]).intValue();
+                            float rank = ((Number) row[2]).floatValue();
+                            index.postings.computeIfAbsent(lemma, k -> new PostingList()).put(pageId, rank);
+                            index.addPage(pageId);
+                            count[0]++;
+                        }
+                    } finally {
+                        index.lock.writeLock().unlock();
+                    }
+                }
+            }
+        });
+        index.ready = true;
+        return count[0];
+    }
+
+    /**
+     * Пересекает списки вхождений (от самого короткого) и передаёт найденные страницы с суммой rank в отбор.
+     *
+     * @param siteId ID сайта
+     * @param lists {@link List}<{@link PostingList}> списки вхождений, отсортированные по возрастанию длины
+     * @param collector {@link TopKCollector} отбор лучших страниц
+     */
+    private static void intersect(int siteId, List<PostingList> lists, TopKCollector collector) {
+        PostingList first = lists.get(0);
+        int[] cursors = new int[lists.size()];
+        outer:
+        for (int i = 0; i < first.size(); i++) {
+            int pageId = first.pageIdAt(i);
+            double abs = first.rankAt(i);
+            for (int l = 1; l < lists.size(); l++) {
+                PostingList other = lists.get(l);
+                int pos = other.advance(pageId, cursors[l]);
+                cursors[l] = pos;
+                if (pos >= other.size()) {
+                    break outer;
+                }
+                if (other.pageIdAt(pos) != pageId) {
+                    continue outer;
+                }
+                abs += other.rankAt(pos);
+            }
+            collector.offer(siteId, pageId, abs);
+        }
+    }
+
+    /**
+     * Выполняет действие после фиксации текущей транзакции или сразу, если транзакции нет.
+     *
+     * @param action {@link Runnable} действие
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Индекс одного сайта: списки вхождений по тексту леммы и множество сохранённых страниц сайта (от их количества
+     * считается порог частых лемм).
+     */
+    private static final class SiteIndex {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, PostingList> postings = new HashMap<>();
+        private final BitSet pages = new BitSet();
+        private int pageCount;
+        private volatile boolean ready;
+
+        /**
+         * Создаёт пустой индекс сайта.
+         *
+         * @param ready признак, что индекс сразу можно использовать для поиска
+         */
+        private SiteIndex(boolean ready) {
+            this.ready = ready;
+        }
+
+        /**
+         * Отмечает страницу как сохранённую (вызывается под блокировкой записи).
+         *
+         * @param pageId ID страницы
+         */
+        private void addPage(int pageId) {
+            if (!pages.get(pageId)) {
+                pages.set(pageId);
+                pageCount++;
+            }
+        }
+
+        /**
+         * Снимает отметку о сохранённой странице (вызывается под блокировкой записи).
+         *
+         * @param pageId ID страницы
+         */
+        private void removePage(int pageId) {
+            if (pages.get(pageId)) {
+                pages.clear(pageId);
+                pageCount--;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package searchengine.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import searchengine.model.entity.Site;
+
+import java.util.Collection;
+
+/**
+ * Движок поиска по индексу в памяти ({@link InMemoryIndex}).
+ *
+ * <p>Включается настройкой {@code search-settings.engine: memory}. Пока индекс сайта не загружен из БД,
+ * запросы по этому сайту выполняются через {@link SqlSearchIndexEngine}.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Service
+@Primary
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "search-settings", name = "engine", havingValue = "memory")
+public class InMemorySearchIndexEngine implements SearchIndexEngine {
+
+    private final InMemoryIndex inMemoryIndex;
+    private final SqlSearchIndexEngine sqlSearchIndexEngine;
+
+    /**
+     * Находит страницы сайта пересечением списков вхождений в памяти.
+     *
+     * @param site {@link Site} сайт
+     * @param lemmaTexts {@link Collection}<{@link String}> тексты лемм запроса
+     * @param collector {@link TopKCollector} отбор лучших страниц
+     */
+    @Override
+    public void collectHits(Site site, Collection<String> lemmaTexts, TopKCollector collector) {
+        if (!inMemoryIndex.isReady(site.getId())) {
+            sqlSearchIndexEngine.collectHits(site, lemmaTexts, collector);
+            return;
+        }
+        inMemoryIndex.collectHits(site.getId(), lemmaTexts, collector);
+    }
+}
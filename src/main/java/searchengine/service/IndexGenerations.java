@@ -0,0 +1,70 @@
+package searchengine.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Номера поколений индекса сайтов: номер сайта увеличивается при каждом изменении его индекса.
+ *
+ * <p>Используется для инвалидации {@link SearchResultCache}: запись кэша хранит номера поколений сайтов на момент
+ * вычисления и считается устаревшей, если хотя бы один номер изменился. Номер увеличивается после фиксации
+ * транзакции, в которой были записаны изменения, — поиск, начавшийся до фиксации, не сможет закэшировать старые
+ * данные под новым номером.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Component
+public class IndexGenerations {
+
+    private final Map<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Возвращает текущий номер поколения индекса сайта.
+     *
+     * @param siteId ID сайта
+     * @return номер поколения
+     */
+    public long current(int siteId) {
+        AtomicLong generation = generations.get(siteId);
+        return generation == null ? 0L : generation.get();
+    }
+
+    /**
+     * Возвращает текущие номера поколений для списка сайтов.
+     *
+     * @param siteIds {@link List}<{@link Integer}> ID сайтов
+     * @return {@code long[]} номера поколений в порядке списка
+     */
+    public long[] snapshot(List<Integer> siteIds) {
+        long[] result = new long[siteIds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = current(siteIds.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Увеличивает номер поколения индекса сайта после фиксации текущей транзакции (или сразу, если транзакции нет).
+     *
+     * @param siteId ID сайта
+     */
+    public void bump(int siteId) {
+        Runnable action = () -> generations.computeIfAbsent(siteId, id -> new AtomicLong()).incrementAndGet();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
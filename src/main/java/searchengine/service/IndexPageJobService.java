@@ -0,0 +1,365 @@
+package searchengine.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.IndexPageJobConfig;
+import searchengine.config.IndexingConfig;
+import searchengine.config.SiteConfig;
+import searchengine.model.dto.indexing.IndexPageJobResponse;
+import searchengine.model.dto.indexing.IndexPageJobStatusResponse;
+import searchengine.model.dto.indexing.IndexPageUrlResult;
+import searchengine.model.enums.IndexPageJobStatus;
+import searchengine.model.enums.IndexPageUrlStatus;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Задания пакетной индексации страниц ({@code /api/indexPages}): список URL индексируется в фоне, состояние
+ * задания и результат по каждому URL доступны по ID задания.
+ *
+ * <p>Задания выполняются по одному в фоновом потоке. Страницы задания загружаются асинхронным
+ * {@link PageFetcher} (не больше {@code indexing-settings.index-page-jobs.fetch-concurrency} запросов
+ * одновременно), разбираются и лемматизируются по мере загрузки и записываются в БД пакетами
+ * по {@code write-batch-size} страниц в одной транзакции ({@link PageIndexingService#write(List)}). Соединение
+ * с БД на время загрузки страниц не берётся. Если пакет не записался, его страницы записываются по одной,
+ * чтобы ошибка одной страницы не отменяла остальные.</p>
+ *
+ * <p>Состояние заданий хранится в памяти: кроме активных, сохраняются последние {@code retained-jobs}
+ * завершённых заданий.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class IndexPageJobService {
+
+    private final IndexingConfig config;
+    private final PageFetcher pageFetcher;
+    private final PageIndexingService pageIndexingService;
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-page-jobs");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Ставит в очередь задание индексации списка страниц. Повторяющиеся URL индексируются один раз.
+     * Если незавершённых заданий уже {@code max-queued-jobs}, задание отклоняется.
+     *
+     * @param urls {@link List}<{@link String}> URL страниц
+     * @return {@link IndexPageJobResponse} ID задания или текст ошибки
+     */
+    public IndexPageJobResponse submit(List<String> urls) {
+        LinkedHashSet<String> unique = new LinkedHashSet<>();
+        if (urls != null) {
+            for (String url : urls) {
+                if (url != null && !url.isBlank()) {
+                    unique.add(url.trim());
+                }
+            }
+        }
+        if (unique.isEmpty()) {
+            return new IndexPageJobResponse(false, null, "Не указаны URL страниц");
+        }
+        int maxUrls = config.getIndexPageJobs().getMaxUrls();
+        if (unique.size() > maxUrls) {
+            return new IndexPageJobResponse(false, null,
+                    "Слишком много URL в задании: " + unique.size() + ", допустимо не больше " + maxUrls);
+        }
+        Job job = new Job(UUID.randomUUID().toString(), new ArrayList<>(unique));
+        int maxQueuedJobs = Math.max(1, config.getIndexPageJobs().getMaxQueuedJobs());
+        synchronized (jobs) {
+            if (jobs.size() - countFinished() >= maxQueuedJobs) {
+                return new IndexPageJobResponse(false, null,
+                        "Слишком много незавершённых заданий, допустимо не больше " + maxQueuedJobs);
+            }
+            jobs.put(job.id, job);
+            evictFinished();
+        }
+        runner.execute(() -> run(job));
+        log.info("Задание индексации страниц {} поставлено в очередь: {} URL", job.id, job.urls.size());
+        return new IndexPageJobResponse(true, job.id, null);
+    }
+
+    /**
+     * Возвращает состояние задания и результаты по каждому URL.
+     *
+     * @param jobId {@link String} ID задания
+     * @return {@link Optional}<{@link IndexPageJobStatusResponse}> состояние задания (пусто, если задание
+     * не найдено или уже удалено из памяти)
+     */
+    public Optional<IndexPageJobStatusResponse> status(String jobId) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        return Optional.ofNullable(job).map(Job::snapshot);
+    }
+
+    /**
+     * Останавливает фоновый поток заданий; выполняемое задание отмечается как прерванное.
+     */
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+
+    /**
+     * Выполняет задание: загружает страницы, разбирает их по мере загрузки и записывает пакетами.
+     *
+     * @param job {@link Job} задание
+     */
+    private void run(Job job) {
+        IndexPageJobConfig settings = config.getIndexPageJobs();
+        int concurrency = Math.max(1, settings.getFetchConcurrency());
+        int batchSize = Math.max(1, settings.getWriteBatchSize());
+        BlockingQueue<Fetched> completed = new LinkedBlockingQueue<>();
+        List<Prepared> batch = new ArrayList<>(batchSize);
+        long started = System.nanoTime();
+        job.start();
+        try {
+            int next = 0;
+            int inFlight = 0;
+            while (next < job.urls.size() || inFlight > 0) {
+                while (next < job.urls.size() && inFlight < concurrency) {
+                    int index = next++;
+                    String url = job.urls.get(index);
+                    SiteConfig siteConfig = pageIndexingService.findSiteConfig(url);
+                    if (siteConfig == null) {
+                        job.finish(index, IndexPageUrlStatus.FAILED, PageIndexingService.OUTSIDE_SITES_ERROR);
+                        continue;
+                    }
+                    try {
+                        pageFetcher.fetch(url).whenComplete((page, error) ->
+                                completed.add(new Fetched(index, siteConfig, page, error)));
+                        inFlight++;
+                    } catch (Exception e) {
+                        fail(job, index, siteConfig, e);
+                    }
+                }
+                if (inFlight == 0) {
+                    continue;
+                }
+                Fetched fetched = completed.take();
+                inFlight--;
+                String url = job.urls.get(fetched.index());
+                if (fetched.error() != null) {
+                    fail(job, fetched.index(), fetched.siteConfig(), fetched.error());
+                    continue;
+                }
+                try {
+                    batch.add(new Prepared(fetched.index(),
+                            pageIndexingService.prepare(fetched.siteConfig(), url, fetched.page())));
+                } catch (Exception e) {
+                    fail(job, fetched.index(), fetched.siteConfig(), e);
+                }
+                if (batch.size() >= batchSize) {
+                    writeBatch(job, batch);
+                }
+            }
+            writeBatch(job, batch);
+            job.complete(IndexPageJobStatus.COMPLETED, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.complete(IndexPageJobStatus.CANCELLED, "Задание прервано до обработки страницы");
+        } catch (Exception e) {
+            log.error("Ошибка задания индексации страниц {}: {}", job.id, e.getMessage(), e);
+            job.complete(IndexPageJobStatus.FAILED,
+                    "Задание остановлено ошибкой: " + PageIndexingService.errorMessage(e));
+        }
+        IndexPageJobStatusResponse result = job.snapshot();
+        log.info("Задание индексации страниц {} завершено ({}) за {} мс: URL {}, проиндексировано {}, ошибок {}",
+                job.id, result.getStatus(), (System.nanoTime() - started) / 1_000_000, result.getTotal(),
+                result.getIndexed(), result.getFailed());
+    }
+
+    /**
+     * Записывает пакет подготовленных страниц одной транзакцией, при ошибке — по одной странице.
+     *
+     * @param job {@link Job} задание
+     * @param batch {@link List}<{@link Prepared}> пакет (очищается после записи)
+     */
+    private void writeBatch(Job job, List<Prepared> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PageIndexingService.PreparedPage> pages = new ArrayList<>(batch.size());
+        for (Prepared prepared : batch) {
+            pages.add(prepared.page());
+        }
+        try {
+            pageIndexingService.write(pages);
+            for (Prepared prepared : batch) {
+                job.finish(prepared.index(), IndexPageUrlStatus.INDEXED, null);
+            }
+        } catch (Exception batchError) {
+            log.warn("Пакет из {} страниц задания {} не записан ({}), страницы записываются по одной",
+                    batch.size(), job.id, PageIndexingService.errorMessage(batchError));
+            for (Prepared prepared : batch) {
+                try {
+                    pageIndexingService.write(List.of(prepared.page()));
+                    job.finish(prepared.index(), IndexPageUrlStatus.INDEXED, null);
+                } catch (Exception e) {
+                    fail(job, prepared.index(), prepared.page().siteConfig(), e);
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Отмечает URL задания как необработанный и записывает ошибку.
+     *
+     * @param job {@link Job} задание
+     * @param index номер URL в задании
+     * @param siteConfig {@link SiteConfig} сайт из конфигурации
+     * @param error {@link Throwable} ошибка
+     */
+    private void fail(Job job, int index, SiteConfig siteConfig, Throwable error) {
+        pageIndexingService.recordFailure(job.urls.get(index), siteConfig, error);
+        job.finish(index, IndexPageUrlStatus.FAILED,
+                "Не удалось проиндексировать страницу: " + PageIndexingService.errorMessage(error));
+    }
+
+    /**
+     * Удаляет из памяти самые старые завершённые задания сверх {@code retained-jobs}. Вызывается под блокировкой
+     * {@link #jobs}.
+     */
+    private void evictFinished() {
+        int excess = countFinished() - Math.max(0, config.getIndexPageJobs().getRetainedJobs());
+        Iterator<Job> it = jobs.values().iterator();
+        while (excess > 0 && it.hasNext()) {
+            if (it.next().isFinished()) {
+                it.remove();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Считает завершённые задания в памяти. Вызывается под блокировкой {@link #jobs}.
+     *
+     * @return количество завершённых заданий
+     */
+    private int countFinished() {
+        int finished = 0;
+        for (Job job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Результат загрузки страницы задания.
+     *
+     * @param index номер URL в задании
+     * @param siteConfig {@link SiteConfig} сайт из конфигурации
+     * @param page {@link PageFetcher.FetchedPage} ответ сервера или {@code null} при ошибке
+     * @param error {@link Throwable} ошибка загрузки или {@code null}
+     */
+    private record Fetched(int index, SiteConfig siteConfig, PageFetcher.FetchedPage page, Throwable error) {
+    }
+
+    /**
+     * Подготовленная к записи страница задания.
+     *
+     * @param index номер URL в задании
+     * @param page {@link PageIndexingService.PreparedPage} страница
+     */
+    private record Prepared(int index, PageIndexingService.PreparedPage page) {
+    }
+
+    /**
+     * Состояние задания: изменяется потоком заданий, читается при запросе статуса.
+     */
+    private static final class Job {
+
+        private final String id;
+        private final List<String> urls;
+        private final IndexPageUrlStatus[] statuses;
+        private final String[] errors;
+        private final long createdTime = System.currentTimeMillis();
+        private IndexPageJobStatus status = IndexPageJobStatus.QUEUED;
+        private Long startedTime;
+        private Long finishedTime;
+        private int indexed;
+        private int failed;
+
+        private Job(String id, List<String> urls) {
+            this.id = id;
+            this.urls = urls;
+            this.statuses = new IndexPageUrlStatus[urls.size()];
+            this.errors = new String[urls.size()];
+            Arrays.fill(statuses, IndexPageUrlStatus.PENDING);
+        }
+
+        private synchronized void start() {
+            status = IndexPageJobStatus.RUNNING;
+            startedTime = System.currentTimeMillis();
+        }
+
+        private synchronized void finish(int index, IndexPageUrlStatus result, String error) {
+            if (statuses[index] != IndexPageUrlStatus.PENDING) {
+                return;
+            }
+            statuses[index] = result;
+            errors[index] = error;
+            if (result == IndexPageUrlStatus.INDEXED) {
+                indexed++;
+            } else {
+                failed++;
+            }
+        }
+
+        private synchronized void complete(IndexPageJobStatus result, String pendingError) {
+            for (int i = 0; i < statuses.length; i++) {
+                if (statuses[i] == IndexPageUrlStatus.PENDING) {
+                    finish(i, IndexPageUrlStatus.FAILED, pendingError);
+                }
+            }
+            status = result;
+            finishedTime = System.currentTimeMillis();
+        }
+
+        private synchronized boolean isFinished() {
+            return finishedTime != null;
+        }
+
+        private synchronized IndexPageJobStatusResponse snapshot() {
+            IndexPageJobStatusResponse response = new IndexPageJobStatusResponse(true, null);
+            response.setJobId(id);
+            response.setStatus(status);
+            response.setTotal(urls.size());
+            response.setProcessed(indexed + failed);
+            response.setIndexed(indexed);
+            response.setFailed(failed);
+            response.setCreatedTime(createdTime);
+            response.setStartedTime(startedTime);
+            response.setFinishedTime(finishedTime);
+            List<IndexPageUrlResult> results = new ArrayList<>(urls.size());
+            for (int i = 0; i < urls.size(); i++) {
+                results.add(new IndexPageUrlResult(urls.get(i), statuses[i], errors[i]));
+            }
+            response.setResults(results);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package searchengine.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики записи лемм и индекса в БД во время индексации.
+ *
+ * <p>Используются для оценки скорости записи (строк в секунду). Счётчики общие для всех сайтов
+ * и сбрасываются при запуске полной индексации.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Component
+public class IndexingMetrics {
+
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder lemmaRows = new LongAdder();
+    private final LongAdder indexRows = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder lockRetries = new LongAdder();
+
+    /**
+     * Учитывает запись лемм и индекса (одной страницы или пакета страниц).
+     *
+     * @param pageCount количество страниц
+     * @param lemmaRowCount количество записанных строк {@code lemma}
+     * @param indexRowCount количество записанных строк {@code search_index}
+     * @param statementCount количество выполненных запросов (batch считается одним запросом)
+     * @param nanos длительность записи в наносекундах
+     */
+    public void recordWrite(int pageCount, int lemmaRowCount, int indexRowCount, int statementCount, long nanos) {
+        pages.add(pageCount);
+        lemmaRows.add(lemmaRowCount);
+        indexRows.add(indexRowCount);
+        statements.add(statementCount);
+        writeNanos.add(nanos);
+    }
+
+    /**
+     * Учитывает повтор записи лемм после ошибки блокировки (дедлок или тайм-аут ожидания блокировки).
+     */
+    public void recordLockRetry() {
+        lockRetries.increment();
+    }
+
+    /**
+     * Возвращает количество страниц, леммы которых записаны в БД.
+     *
+     * @return количество страниц
+     */
+    public long pages() {
+        return pages.sum();
+    }
+
+    /**
+     * Возвращает количество записанных строк {@code lemma} (вставок и обновлений frequency).
+     *
+     * @return количество строк
+     */
+    public long lemmaRows() {
+        return lemmaRows.sum();
+    }
+
+    /**
+     * Возвращает количество записанных строк {@code search_index}.
+     *
+     * @return количество строк
+     */
+    public long indexRows() {
+        return indexRows.sum();
+    }
+
+    /**
+     * Возвращает количество запросов записи лемм и индекса.
+     *
+     * @return количество запросов
+     */
+    public long statements() {
+        return statements.sum();
+    }
+
+    /**
+     * Возвращает количество повторов записи после ошибок блокировки.
+     *
+     * @return количество повторов
+     */
+    public long lockRetries() {
+        return lockRetries.sum();
+    }
+
+    /**
+     * Возвращает скорость записи строк {@code lemma} и {@code search_index} за время, проведённое в записи.
+     *
+     * @return строк в секунду
+     */
+    public double rowsPerSecond() {
+        long nanos = writeNanos.sum();
+        if (nanos <= 0) {
+            return 0d;
+        }
+        return (lemmaRows.sum() + indexRows.sum()) * 1_000_000_000d / nanos;
+    }
+
+    /**
+     * Возвращает краткую сводку счётчиков для записи в лог.
+     *
+     * @return {@link String} сводка
+     */
+    public String summary() {
+        return String.format("страниц %d, строк lemma %d, строк search_index %d, запросов %d, %.0f строк/с, "
+                        + "повторов после блокировок %d",
+                pages.sum(), lemmaRows.sum(), indexRows.sum(), statements.sum(), rowsPerSecond(), lockRetries.sum());
+    }
+
+    /**
+     * Сбрасывает все счётчики.
+     */
+    public void reset() {
+        pages.reset();
+        lemmaRows.reset();
+        indexRows.reset();
+        statements.reset();
+        writeNanos.reset();
+        lockRetries.reset();
+    }
+}
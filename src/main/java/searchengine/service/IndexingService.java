@@ -30,6 +30,7 @@ public class IndexingService {
     private final IndexingConfig config;
     private final AsyncSiteIndexingService asyncService;
     private final SiteRepository siteRepository;
+    private final IndexingMetrics indexingMetrics;
 
     private final AtomicBoolean indexingInProgress = new AtomicBoolean(false);
     private final AtomicInteger activeSites = new AtomicInteger(0);
@@ -54,6 +55,7 @@ public class IndexingService {
             return new IndexingResponseDTO(false, "Индексация уже запущена");
         }
         stopRequested = false;
+        indexingMetrics.reset();
         log.info("🚀 Запуск индексации всех сайтов...");
         activeSites.set(0);
         List<SiteConfig> sites = config.getSites();
@@ -90,7 +92,7 @@ public class IndexingService {
         }
         log.info("🛑 Получен запрос на остановку индексации...");
         stopRequested = true;
-        asyncService.stopAllForkJoinPools();
+        asyncService.stopAllCrawlers();
         updateAllSitesToFailed();
         indexingInProgress.set(false);
         activeSites.set(0);
@@ -100,6 +102,8 @@ public class IndexingService {
 
     /**
      * Переводит все сайты из конфигурации в статус {@link SiteStatus#FAILED} с указанием причины остановки.
+     * Поколения, которые продолжают обслуживать поиск при теневой переиндексации, не меняются
+     * ({@link AsyncSiteIndexingService#failsOnAbort(Site)}).
      */
     private void updateAllSitesToFailed() {
         try {
@@ -109,6 +113,9 @@ public class IndexingService {
                 List<Site> sites = siteRepository.findAllByUrl(url);
                 if (!sites.isEmpty()) {
                     for (Site site : sites) {
+                        if (!asyncService.failsOnAbort(site)) {
+                            continue;
+                        }
                         site.setStatus(SiteStatus.FAILED);
                         site.setLastError("Индексация остановлена пользователем");
                         site.setStatusTime(LocalDateTime.now());
@@ -1,35 +1,74 @@
 package searchengine.service;
 
 import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.jsoup.Jsoup;
 import org.springframework.stereotype.Service;
+import searchengine.config.IndexingConfig;
+import searchengine.service.MorphologyProvider.Language;
 
-import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Извлекает леммы из текста с использованием Lucene Morphology.
- * 
+ *
+ * <p>Поддерживаются русский и английский языки: морфология выбирается для каждого слова по алфавиту его букв
+ * (кириллица или латиница), слово из букв разных алфавитов делится на части. Отдельная пометка языка в таблице
+ * {@code lemma} не нужна — леммы разных языков записаны разными алфавитами и не совпадают.</p>
+ *
+ * <p>Результат разбора словоформы (лемма или признак, что слово не индексируется) кэшируется в общем для всех
+ * потоков ограниченном кэше ({@code indexing-settings.lemma-cache-size} словоформ). Кэш состоит из двух поколений:
+ * когда текущее поколение заполнено, оно становится предыдущим, а старое предыдущее отбрасывается; словоформы
+ * из предыдущего поколения при обращении переносятся в текущее. Так часто встречающиеся слова остаются в кэше
+ * без блокировок и подсчёта обращений.</p>
+ *
  * @author Tseliar Vladimir
  */
 @Service
 public class LemmaFinder {
 
-    private final LuceneMorphology luceneMorph;
+    /**
+     * Значение кэша для словоформ без леммы (служебные и неразобранные слова).
+     */
+    private static final String NO_LEMMA = "";
 
     /**
-     * Создаёт экземпляр анализатора и инициализирует морфологию русского языка.
+     * Алфавиты символов: не буква, кириллица, латиница.
      */
-    public LemmaFinder() {
-        try {
-            this.luceneMorph = new RussianLuceneMorphology();
-        } catch (IOException e) {
-            throw new RuntimeException("Не удалось инициализировать морфологический анализатор", e);
-        }
+    private static final int NONE = 0;
+    private static final int CYRILLIC = 1;
+    private static final int LATIN = 2;
+
+    /**
+     * Пометки служебных частей речи русской морфологии (союз, предлог, частица, междометие).
+     */
+    private static final String[] RUSSIAN_SERVICE_TAGS = {"СОЮЗ", "ПРЕДЛ", "ЧАСТ", "МЕЖД"};
+
+    /**
+     * Пометки служебных частей речи английской морфологии (союз, предлог, частица, междометие, артикль).
+     */
+    private static final String[] ENGLISH_SERVICE_TAGS = {"CONJ", "PREP", "PART", "INT", "ARTICLE"};
+
+    private final MorphologyProvider morphologyProvider;
+    private final int generationSize;
+    private volatile Map<WordKey, String> current = new ConcurrentHashMap<>();
+    private volatile Map<WordKey, String> previous = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * Создаёт экземпляр анализатора; словари морфологии загружаются {@link MorphologyProvider} при первом слове языка.
+     *
+     * @param config {@link IndexingConfig} настройки индексации (размер кэша словоформ)
+     * @param morphologyProvider {@link MorphologyProvider} поставщик морфологических анализаторов
+     */
+    public LemmaFinder(IndexingConfig config, MorphologyProvider morphologyProvider) {
+        this.morphologyProvider = morphologyProvider;
+        this.generationSize = Math.max(1, config.getLemmaCacheSize() / 2);
     }
 
     /**
@@ -39,77 +78,160 @@ public class LemmaFinder {
      * @return {@link Map}<{@link String}, {@link Integer}> карта {@code лемма -> количество} для текста страницы
      */
     public Map<String, Integer> collectLemmas(String html) {
-        String text = cleanHtml(html).toLowerCase(Locale.ROOT);
-        String[] words = text.replaceAll("[^а-яё\\s]", " ")
-                .trim()
-                .split("\\s+");
-        Map<String, Integer> result = new HashMap<>();
-        for (String word : words) {
-            if (word.isBlank()) continue;
-            List<String> morphInfo = luceneMorph.getMorphInfo(word);
-            if (isServiceWord(morphInfo)) continue;
-            List<String> normalForms = luceneMorph.getNormalForms(word);
-            if (normalForms.isEmpty()) continue;
-            String lemma = normalForms.get(0);
-            result.merge(lemma, 1, Integer::sum);
-        }
-        return result;
+        return collectLemmasFromText(cleanHtml(html));
     }
 
     /**
      * Собирает леммы из обычного текста (без HTML) и считает их количество.
      *
+     * <p>Текст просматривается один раз посимвольно: словом считается последовательность букв одного алфавита
+     * (русского или латинского), регистр приводится при чтении символа. Промежуточные копии текста и строки для слов не создаются — строка создаётся
+     * только для словоформы, которой ещё нет в кэше.</p>
+     *
      * @param text {@link String} текст запроса/строка текста
      * @return {@link Map}<{@link String}, {@link Integer}> карта {@code лемма -> количество} для переданного текста
      */
     public Map<String, Integer> collectLemmasFromText(String text) {
-        if (text == null || text.isBlank()) {
-            return new HashMap<>();
-        }
-        String normalized = text.toLowerCase(Locale.ROOT);
-        String[] words = normalized.replaceAll("[^а-яё\\s]", " ")
-                .trim()
-                .split("\\s+");
         Map<String, Integer> result = new HashMap<>();
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
-            List<String> morphInfo = luceneMorph.getMorphInfo(word);
-            if (isServiceWord(morphInfo)) {
-                continue;
+        if (text == null || text.isEmpty()) {
+            return result;
+        }
+        WordKey word = new WordKey(32);
+        int wordScript = NONE;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? toLower(text.charAt(i)) : ' ';
+            int script = scriptOf(c);
+            if (script != wordScript && word.length > 0) {
+                String lemma = lemmaOf(word, wordScript);
+                if (lemma != null) {
+                    result.merge(lemma, 1, Integer::sum);
+                }
+                word.reset();
             }
-            List<String> normalForms = luceneMorph.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
+            if (script != NONE) {
+                word.append(c);
             }
-            String lemma = normalForms.get(0);
-            result.merge(lemma, 1, Integer::sum);
+            wordScript = script;
         }
         return result;
     }
 
     /**
-     * Возвращает лемму для одного слова (русский язык) или {@code null}, если слово не удалось разобрать
-     * или оно является служебной частью речи (междометие, союз, предлог, частица).
+     * Возвращает лемму для одного слова (русского или английского) или {@code null}, если слово не удалось
+     * разобрать, оно является служебной частью речи или содержит символы, кроме букв одного алфавита.
      *
      * @param word {@link String} одно слово (словоформа)
      * @return {@link String} лемма или {@code null}
      */
     public String getLemmaForWord(String word) {
-        if (word == null || word.isBlank()) {
+        if (word == null || word.isEmpty()) {
             return null;
         }
-        String normalized = word.toLowerCase(Locale.ROOT);
-        if (!normalized.matches("[а-яё]+")) {
-            return null;
+        return getLemmaForWord(word, 0, word.length());
+    }
+
+    /**
+     * Возвращает лемму для слова, заданного фрагментом текста, без создания строки слова.
+     *
+     * @param text {@link CharSequence} текст
+     * @param start начало слова
+     * @param end конец слова (не включая), больше {@code start}
+     * @return {@link String} лемма или {@code null}
+     * @see #getLemmaForWord(String)
+     */
+    public String getLemmaForWord(CharSequence text, int start, int end) {
+        WordKey key = new WordKey(end - start);
+        int script = scriptOf(toLower(text.charAt(start)));
+        for (int i = start; i < end; i++) {
+            char c = toLower(text.charAt(i));
+            if (script == NONE || scriptOf(c) != script) {
+                return null;
+            }
+            key.append(c);
+        }
+        return lemmaOf(key, script);
+    }
+
+    /**
+     * Удаляет HTML-теги, оставляя только текст.
+     *
+     * @param html {@link String} HTML-код
+     * @return {@link String} текст без тегов
+     */
+    public String cleanHtml(String html) {
+        if (html == null || html.isBlank()) return "";
+        return Jsoup.parse(html).text();
+    }
+
+    /**
+     * Возвращает краткую сводку по кэшу словоформ для записи в лог.
+     *
+     * @return {@link String} сводка
+     */
+    public String cacheSummary() {
+        long hits = cacheHits.sum();
+        long misses = cacheMisses.sum();
+        long total = hits + misses;
+        return String.format("кэш словоформ: %d записей, попаданий %d, промахов %d (%.1f%%)",
+                current.size() + previous.size(), hits, misses, total == 0 ? 0d : hits * 100d / total);
+    }
+
+    /**
+     * Возвращает лемму словоформы из кэша или разбирает её морфологическим анализатором.
+     *
+     * @param word {@link WordKey} словоформа в нижнем регистре из букв одного алфавита (может изменяться после вызова)
+     * @param script алфавит словоформы ({@link #CYRILLIC} или {@link #LATIN})
+     * @return {@link String} лемма или {@code null}, если слово не индексируется
+     */
+    private String lemmaOf(WordKey word, int script) {
+        String cached = current.get(word);
+        if (cached == null) {
+            cached = previous.get(word);
+            if (cached != null) {
+                remember(word.copy(), cached);
+            }
+        }
+        if (cached != null) {
+            cacheHits.increment();
+            return cached.isEmpty() ? null : cached;
         }
+        cacheMisses.increment();
+        WordKey key = word.copy();
+        String lemma = script == CYRILLIC
+                ? analyze(Language.RUSSIAN, RUSSIAN_SERVICE_TAGS, key.toString())
+                : analyze(Language.ENGLISH, ENGLISH_SERVICE_TAGS, key.toString());
+        remember(key, lemma == null ? NO_LEMMA : lemma);
+        return lemma;
+    }
+
+    /**
+     * Разбирает словоформу морфологическим анализатором языка, выданным {@link MorphologyProvider}.
+     *
+     * @param language {@link Language} язык словоформы
+     * @param serviceTags пометки служебных частей речи этого языка
+     * @param word {@link String} словоформа в нижнем регистре
+     * @return {@link String} лемма или {@code null}, если слово служебное или не разобрано
+     */
+    private String analyze(Language language, String[] serviceTags, String word) {
+        return morphologyProvider.apply(language, morphology -> analyze(morphology, serviceTags, word));
+    }
+
+    /**
+     * Разбирает словоформу переданным морфологическим анализатором.
+     *
+     * @param morphology {@link LuceneMorphology} анализатор
+     * @param serviceTags пометки служебных частей речи
+     * @param word {@link String} словоформа в нижнем регистре
+     * @return {@link String} лемма или {@code null}, если слово служебное или не разобрано
+     */
+    private String analyze(LuceneMorphology morphology, String[] serviceTags, String word) {
         try {
-            List<String> morphInfo = luceneMorph.getMorphInfo(normalized);
-            if (isServiceWord(morphInfo)) {
+            List<String> morphInfo = morphology.getMorphInfo(word);
+            if (isServiceWord(morphInfo, serviceTags)) {
                 return null;
             }
-            List<String> normalForms = luceneMorph.getNormalForms(normalized);
+            List<String> normalForms = morphology.getNormalForms(word);
             if (normalForms.isEmpty()) {
                 return null;
             }
@@ -120,31 +242,145 @@ public class LemmaFinder {
     }
 
     /**
-     * Удаляет HTML-теги, оставляя только текст.
+     * Добавляет словоформу в текущее поколение кэша, сменяя поколения при его заполнении.
      *
-     * @param html {@link String} HTML-код
-     * @return {@link String} текст без тегов
+     * @param word {@link WordKey} неизменяемая копия словоформы
+     * @param lemma {@link String} лемма или {@link #NO_LEMMA}
      */
-    public String cleanHtml(String html) {
-        if (html == null || html.isBlank()) return "";
-        return Jsoup.parse(html).text();
+    private void remember(WordKey word, String lemma) {
+        Map<WordKey, String> generation = current;
+        generation.put(word, lemma);
+        if (generation.size() >= generationSize) {
+            synchronized (this) {
+                if (current == generation) {
+                    previous = generation;
+                    current = new ConcurrentHashMap<>();
+                }
+            }
+        }
     }
 
     /**
      * Определяет, является ли слово служебной частью речи, которую нужно исключить.
      *
      * @param morphInfo {@link List}<{@link String}> морфологическая информация
+     * @param serviceTags пометки служебных частей речи
      * @return true, если слово нужно игнорировать
      */
-    private boolean isServiceWord(List<String> morphInfo) {
+    private boolean isServiceWord(List<String> morphInfo, String[] serviceTags) {
         for (String info : morphInfo) {
-            if (info.contains("СОЮЗ")
-                    || info.contains("ПРЕДЛ")
-                    || info.contains("ЧАСТ")
-                    || info.contains("МЕЖД")) {
-                return true;
+            for (String tag : serviceTags) {
+                if (info.contains(tag)) {
+                    return true;
+                }
             }
         }
         return false;
     }
+
+    /**
+     * Приводит заглавную русскую или латинскую букву к строчной, остальные символы возвращает без изменений.
+     *
+     * @param c символ
+     * @return символ в нижнем регистре
+     */
+    private static char toLower(char c) {
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c == 'Ё' ? 'ё' : c;
+    }
+
+    /**
+     * Определяет алфавит строчной буквы.
+     *
+     * @param c символ в нижнем регистре
+     * @return {@link #CYRILLIC} для {@code а-я} и {@code ё}, {@link #LATIN} для {@code a-z}, иначе {@link #NONE}
+     */
+    private static int scriptOf(char c) {
+        if ((c >= 'а' && c <= 'я') || c == 'ё') {
+            return CYRILLIC;
+        }
+        return c >= 'a' && c <= 'z' ? LATIN : NONE;
+    }
+
+    /**
+     * Ключ кэша словоформ: символы слова в массиве и хэш, совпадающий с {@link String#hashCode()}.
+     *
+     * <p>При разборе текста один экземпляр переиспользуется для всех слов, в кэш попадают только копии
+     * ({@link #copy()}).</p>
+     */
+    private static final class WordKey {
+
+        private char[] chars;
+        private int length;
+        private int hash;
+
+        /**
+         * Создаёт пустой ключ.
+         *
+         * @param capacity начальная ёмкость
+         */
+        private WordKey(int capacity) {
+            this.chars = new char[Math.max(1, capacity)];
+        }
+
+        /**
+         * Добавляет символ в конец слова.
+         *
+         * @param c символ
+         */
+        private void append(char c) {
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            chars[length++] = c;
+            hash = 31 * hash + c;
+        }
+
+        /**
+         * Очищает ключ для следующего слова.
+         */
+        private void reset() {
+            length = 0;
+            hash = 0;
+        }
+
+        /**
+         * Возвращает неизменяемую копию ключа точного размера.
+         *
+         * @return {@link WordKey} копия
+         */
+        private WordKey copy() {
+            WordKey copy = new WordKey(length);
+            System.arraycopy(chars, 0, copy.chars, 0, length);
+            copy.length = length;
+            copy.hash = hash;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WordKey other) || other.length != length || other.hash != hash) {
+                return false;
+            }
+            return Arrays.equals(chars, 0, length, other.chars, 0, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
 }
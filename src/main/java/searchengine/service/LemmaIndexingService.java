@@ -1,33 +1,48 @@
 package searchengine.service;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import searchengine.model.entity.Lemma;
+import searchengine.config.IndexingConfig;
 import searchengine.model.entity.Page;
 import searchengine.model.entity.Site;
-import searchengine.repository.IndexSearchRepository;
-import searchengine.repository.LemmaRepository;
+import searchengine.model.enums.LemmaWriteMode;
+import searchengine.repository.IndexBatchRepository;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Сервис сохранения лемм и индекса для страницы.
- * 
+ *
  * @author Tseliar Vladimir
  */
 @Service
+@Slf4j
 @RequiredArgsConstructor
 public class LemmaIndexingService {
 
-    private final LemmaRepository lemmaRepository;
-    private final IndexSearchRepository indexRepository;
+    private final IndexingConfig config;
+    private final IndexBatchRepository batchRepository;
+    private final InMemoryIndex inMemoryIndex;
+    private final IndexingMetrics metrics;
 
     /**
      * Сохраняет леммы и строки индекса для страницы.
      *
-     * <p>Для работы в многопоточном режиме использует UPSERT на уровне БД, чтобы избегать ошибок дубликатов.</p>
+     * <p>Для работы в многопоточном режиме использует UPSERT на уровне БД, чтобы избегать ошибок дубликатов.
+     * Леммы страницы записываются многострочными запросами, их ID получаются одним запросом {@code IN},
+     * строки индекса вставляются через JDBC batch (размер пакета — {@code indexing-settings.batch-size}).</p>
      *
      * @param page {@link Page} страница
      * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> карта {@code лемма -> количество} для страницы
@@ -38,20 +53,230 @@ public class LemmaIndexingService {
         if (site == null || page == null) {
             throw new IllegalArgumentException("Site и Page не могут быть null");
         }
-        Map<String, Integer> sorted = (lemmaCounts instanceof TreeMap)
-                ? lemmaCounts
-                : new TreeMap<>(lemmaCounts);
-        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
+        long started = System.nanoTime();
+        int batchSize = Math.max(1, config.getBatchSize());
+        Map<String, Integer> sorted = new TreeMap<>();
+        Map<String, Integer> increments = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : lemmaCounts.entrySet()) {
             String lemmaText = entry.getKey();
             if (lemmaText == null || lemmaText.isBlank()) {
                 continue;
             }
-            int rank = entry.getValue();
-            lemmaRepository.upsertIncrementFrequency(site.getId(), lemmaText);
-            Lemma lemma = lemmaRepository.findBySiteAndLemma(site, lemmaText)
-                    .orElseThrow(() -> new IllegalStateException("Lemma not found after upsert: " + lemmaText));
+            sorted.put(lemmaText, entry.getValue());
+            increments.put(lemmaText, 1);
+        }
+        if (sorted.isEmpty()) {
+            return;
+        }
+
+        int statements = batchRepository.upsertLemmaFrequencies(site.getId(), increments, batchSize);
+        Map<String, Integer> lemmaIds = batchRepository.findLemmaIds(site.getId(), sorted.keySet(), batchSize);
+        statements += (sorted.size() + batchSize - 1) / batchSize;
+
+        int[] ids = new int[sorted.size()];
+        float[] ranks = new float[sorted.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
+            Integer lemmaId = lemmaIds.get(entry.getKey());
+            if (lemmaId == null) {
+                throw new IllegalStateException("Lemma not found after upsert: " + entry.getKey());
+            }
+            ids[i] = lemmaId;
+            ranks[i] = entry.getValue();
+            i++;
+        }
+        int[] pageIds = new int[ids.length];
+        Arrays.fill(pageIds, page.getId());
+        statements += batchRepository.upsertIndexRows(pageIds, ids, ranks, batchSize);
+
+        long nanos = System.nanoTime() - started;
+        metrics.recordWrite(1, sorted.size(), ids.length, statements, nanos);
+        log.debug("Записаны леммы страницы {}: {} лемм, {} запросов, {} мкс",
+                page.getId(), sorted.size(), statements, nanos / 1_000);
+        inMemoryIndex.onPageIndexed(site.getId(), page.getId(), sorted);
+    }
+
+    /**
+     * Приводит леммы и строки индекса сохранённой страницы к новой версии, применяя только разницу.
+     *
+     * <p>Текущие строки индекса страницы читаются одним запросом и сравниваются с новой картой лемм. Для лемм,
+     * появившихся на странице, frequency увеличивается и добавляются строки индекса; у оставшихся лемм
+     * обновляется rank, если изменилось количество; строки исчезнувших лемм удаляются, их frequency уменьшается,
+     * а леммы с нулевой frequency удаляются. Все изменения пишутся пакетными запросами, поэтому их число зависит
+     * от объёма изменений на странице, а не от размера индекса сайта.</p>
+     *
+     * @param page {@link Page} сохранённая страница
+     * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> новая карта {@code лемма -> количество}
+     * @param site {@link Site} сайт
+     */
+    @Transactional
+    public void updatePageIndex(Page page, Map<String, Integer> lemmaCounts, Site site) {
+        if (site == null || page == null) {
+            throw new IllegalArgumentException("Site и Page не могут быть null");
+        }
+        long started = System.nanoTime();
+        int batchSize = Math.max(1, config.getBatchSize());
+        Map<String, Integer> sorted = new TreeMap<>();
+        if (lemmaCounts != null) {
+            for (Map.Entry<String, Integer> entry : lemmaCounts.entrySet()) {
+                if (entry.getKey() != null && !entry.getKey().isBlank()) {
+                    sorted.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        Map<Integer, IndexBatchRepository.PagePosting> previous = new HashMap<>();
+        for (IndexBatchRepository.PagePosting posting : batchRepository.findPagePostings(page.getId())) {
+            previous.put(posting.lemmaId(), posting);
+        }
+        int statements = 1;
+        Map<String, Integer> knownIds = sorted.isEmpty()
+                ? Map.of()
+                : batchRepository.findLemmaIds(site.getId(), sorted.keySet(), batchSize);
+        statements += (sorted.size() + batchSize - 1) / batchSize;
 
-            indexRepository.upsertRank(page.getId(), lemma.getId(), (float) rank);
+        Map<String, Integer> added = new TreeMap<>();
+        Map<String, Integer> upserts = new HashMap<>();
+        Map<Integer, Float> rows = new TreeMap<>();
+        Set<Integer> seen = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
+            Integer lemmaId = knownIds.get(entry.getKey());
+            if (lemmaId != null && !seen.add(lemmaId)) {
+                continue;
+            }
+            IndexBatchRepository.PagePosting posting = lemmaId == null ? null : previous.remove(lemmaId);
+            if (posting == null) {
+                added.put(entry.getKey(), 1);
+                upserts.put(entry.getKey(), entry.getValue());
+            } else if (posting.rank() != entry.getValue().floatValue()) {
+                rows.put(lemmaId, entry.getValue().floatValue());
+                upserts.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (!added.isEmpty()) {
+            statements += batchRepository.upsertLemmaFrequencies(site.getId(), added, batchSize);
+            Map<String, Integer> addedIds = batchRepository.findLemmaIds(site.getId(), added.keySet(), batchSize);
+            statements += (added.size() + batchSize - 1) / batchSize;
+            for (String lemmaText : added.keySet()) {
+                Integer lemmaId = addedIds.get(lemmaText);
+                if (lemmaId == null) {
+                    throw new IllegalStateException("Lemma not found after upsert: " + lemmaText);
+                }
+                rows.put(lemmaId, sorted.get(lemmaText).floatValue());
+            }
+        }
+        if (!rows.isEmpty()) {
+            int[] ids = new int[rows.size()];
+            float[] ranks = new float[rows.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Float> row : rows.entrySet()) {
+                ids[i] = row.getKey();
+                ranks[i] = row.getValue();
+                i++;
+            }
+            int[] pageIds = new int[ids.length];
+            Arrays.fill(pageIds, page.getId());
+            statements += batchRepository.upsertIndexRows(pageIds, ids, ranks, batchSize);
+        }
+        List<String> removed = new ArrayList<>(previous.size());
+        if (!previous.isEmpty()) {
+            List<Integer> removedIds = new ArrayList<>(new TreeSet<>(previous.keySet()));
+            statements += batchRepository.deleteIndexRows(page.getId(), removedIds, batchSize);
+            statements += batchRepository.decrementLemmaFrequencies(removedIds, batchSize);
+            for (IndexBatchRepository.PagePosting posting : previous.values()) {
+                removed.add(posting.lemma());
+            }
+        }
+
+        long nanos = System.nanoTime() - started;
+        metrics.recordWrite(1, added.size() + removed.size(), rows.size() + removed.size(), statements, nanos);
+        log.debug("Обновлены леммы страницы {}: добавлено {}, изменён rank {}, удалено {}, без изменений {}, "
+                        + "{} запросов, {} мкс", page.getId(), added.size(), upserts.size() - added.size(),
+                removed.size(), sorted.size() - upserts.size(), statements, nanos / 1_000);
+        inMemoryIndex.onPageUpdated(site.getId(), page.getId(), upserts, removed);
+    }
+
+    /**
+     * Записывает в БД накопленное содержимое буфера лемм сайта (режим {@link LemmaWriteMode#BULK}).
+     *
+     * <p>Frequency лемм записывается многострочными UPSERT в порядке текста леммы, строки индекса — JDBC batch
+     * в порядке {@code (page_id, lemma_id)}. Запись идёт без общей транзакции: буфер используется только при полной
+     * индексации и переиндексации в теневое поколение, когда записываемая запись сайта не участвует в поиске,
+     * а большие транзакции раздувают undo log. Одновременно буфер сайта записывает только один поток.</p>
+     *
+     * @param site {@link Site} сайт
+     * @param buffer {@link SiteLemmaBuffer} буфер лемм сайта
+     * @param waitForRunning true — дождаться записи, которую уже выполняет другой поток; false — пропустить запись,
+     *                       если она уже выполняется
+     */
+    public void flushBuffer(Site site, SiteLemmaBuffer buffer, boolean waitForRunning) {
+        ReentrantLock flushLock = buffer.getFlushLock();
+        if (waitForRunning) {
+            flushLock.lock();
+        } else if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            SiteLemmaBuffer.Snapshot snapshot = buffer.drain();
+            if (snapshot.isEmpty()) {
+                return;
+            }
+            long started = System.nanoTime();
+            int batchSize = Math.max(1, config.getBatchSize());
+            Map<String, Integer> frequencies = new TreeMap<>(snapshot.frequencies());
+            int statements = batchRepository.upsertLemmaFrequencies(site.getId(), frequencies, batchSize);
+            Map<String, Integer> lemmaIds = batchRepository.findLemmaIds(site.getId(), frequencies.keySet(), batchSize);
+            statements += (frequencies.size() + batchSize - 1) / batchSize;
+
+            List<SiteLemmaBuffer.PagePostings> pages = new ArrayList<>(snapshot.postings());
+            pages.sort(Comparator.comparingInt(SiteLemmaBuffer.PagePostings::pageId));
+            int total = 0;
+            for (SiteLemmaBuffer.PagePostings page : pages) {
+                total += page.size();
+            }
+            int[] pageIds = new int[total];
+            int[] ids = new int[total];
+            float[] ranks = new float[total];
+            long[] sortKeys = new long[0];
+            int row = 0;
+            for (SiteLemmaBuffer.PagePostings page : pages) {
+                if (sortKeys.length < page.size()) {
+                    sortKeys = new long[page.size()];
+                }
+                for (int i = 0; i < page.size(); i++) {
+                    Integer lemmaId = lemmaIds.get(page.lemmas()[i]);
+                    if (lemmaId == null) {
+                        throw new IllegalStateException("Lemma not found after upsert: " + page.lemmas()[i]);
+                    }
+                    sortKeys[i] = ((long) lemmaId << 32) | i;
+                }
+                Arrays.sort(sortKeys, 0, page.size());
+                for (int i = 0; i < page.size(); i++) {
+                    int source = (int) sortKeys[i];
+                    pageIds[row] = page.pageId();
+                    ids[row] = (int) (sortKeys[i] >>> 32);
+                    ranks[row] = page.ranks()[source];
+                    row++;
+                }
+            }
+            statements += batchRepository.upsertIndexRows(pageIds, ids, ranks, batchSize);
+
+            long nanos = System.nanoTime() - started;
+            metrics.recordWrite(pages.size(), frequencies.size(), total, statements, nanos);
+            log.info("Записан буфер лемм сайта {}: страниц {}, лемм {}, вхождений {}, запросов {}, {} мс",
+                    site.getUrl(), pages.size(), frequencies.size(), total, statements, nanos / 1_000_000);
+            if (inMemoryIndex.isEnabled()) {
+                for (SiteLemmaBuffer.PagePostings page : pages) {
+                    Map<String, Integer> lemmaCounts = new HashMap<>(page.size() * 2);
+                    for (int i = 0; i < page.size(); i++) {
+                        lemmaCounts.put(page.lemmas()[i], (int) page.ranks()[i]);
+                    }
+                    inMemoryIndex.onPageIndexed(site.getId(), page.pageId(), lemmaCounts);
+                }
+            }
+        } finally {
+            flushLock.unlock();
         }
     }
 }
@@ -0,0 +1,260 @@
+package searchengine.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingConfig;
+import searchengine.config.MorphologyConfig;
+import searchengine.model.enums.MorphologyMode;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Выдаёт экземпляры морфологических анализаторов потокам лемматизации и измеряет конкуренцию за них.
+ *
+ * <p>Словарь языка загружается при первом обращении к нему, поэтому неиспользуемые языки не замедляют запуск
+ * и не занимают память. Режим {@code indexing-settings.morphology.mode}:</p>
+ * <ul>
+ *     <li>{@code shared} — один экземпляр на язык для всех потоков;</li>
+ *     <li>{@code thread-local} — экземпляр в каждом потоке (память растёт с числом потоков);</li>
+ *     <li>{@code pool} — до {@code pool-size} экземпляров на язык, создаются только при одновременных обращениях.</li>
+ * </ul>
+ *
+ * <p>Для каждого языка учитываются время загрузки и примерный объём словарей (по изменению занятой памяти кучи),
+ * количество обращений, обращения, заставшие экземпляр занятым (или ждавшие свободного экземпляра пула),
+ * время ожидания и время разбора.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Component
+@Slf4j
+public class MorphologyProvider {
+
+    /**
+     * Язык морфологического словаря.
+     */
+    public enum Language {
+        RUSSIAN,
+        ENGLISH
+    }
+
+    private final MorphologyMode mode;
+    private final Map<Language, Slot> slots = new EnumMap<>(Language.class);
+
+    /**
+     * Создаёт поставщика; словари не загружаются до первого обращения.
+     *
+     * @param config {@link IndexingConfig} настройки индексации (режим и размер пула морфологии)
+     */
+    public MorphologyProvider(IndexingConfig config) {
+        MorphologyConfig morphology = config.getMorphology();
+        this.mode = morphology.getMode();
+        for (Language language : Language.values()) {
+            slots.put(language, new Slot(language, Math.max(1, morphology.getPoolSize())));
+        }
+    }
+
+    /**
+     * Выполняет действие с экземпляром анализатора языка, выданным текущему потоку.
+     *
+     * @param language {@link Language} язык
+     * @param action {@link Function} действие (не должно сохранять ссылку на экземпляр)
+     * @param <T> тип результата
+     * @return результат действия
+     */
+    public <T> T apply(Language language, Function<LuceneMorphology, T> action) {
+        Slot slot = slots.get(language);
+        long started = System.nanoTime();
+        LuceneMorphology morphology = slot.acquire();
+        long acquired = System.nanoTime();
+        if (slot.inUse.incrementAndGet() > 1 && mode == MorphologyMode.SHARED) {
+            slot.contended.increment();
+        }
+        try {
+            return action.apply(morphology);
+        } finally {
+            slot.inUse.decrementAndGet();
+            slot.release(morphology);
+            slot.calls.increment();
+            slot.waitNanos.add(acquired - started);
+            slot.busyNanos.add(System.nanoTime() - acquired);
+        }
+    }
+
+    /**
+     * Возвращает краткую сводку по загруженным словарям и конкуренции за них для записи в лог.
+     *
+     * @return {@link String} сводка
+     */
+    public String summary() {
+        StringJoiner joiner = new StringJoiner("; ", "морфология (" + mode + "): ", "");
+        for (Slot slot : slots.values()) {
+            if (slot.instances.get() > 0) {
+                joiner.add(slot.summary());
+            }
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Экземпляры анализатора одного языка и счётчики обращений к ним.
+     */
+    private final class Slot {
+
+        private final Language language;
+        private final int poolSize;
+        private final BlockingQueue<LuceneMorphology> idle;
+        private final ThreadLocal<LuceneMorphology> perThread;
+        private volatile LuceneMorphology shared;
+
+        private final AtomicInteger instances = new AtomicInteger();
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicLong loadNanos = new AtomicLong();
+        private final AtomicLong loadBytes = new AtomicLong();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder contended = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        /**
+         * Создаёт пустой набор экземпляров языка.
+         *
+         * @param language {@link Language} язык
+         * @param poolSize размер пула (режим {@code pool})
+         */
+        private Slot(Language language, int poolSize) {
+            this.language = language;
+            this.poolSize = poolSize;
+            this.idle = new ArrayBlockingQueue<>(poolSize);
+            this.perThread = ThreadLocal.withInitial(this::load);
+        }
+
+        /**
+         * Выдаёт экземпляр текущему потоку, загружая словарь при необходимости.
+         *
+         * @return {@link LuceneMorphology} экземпляр
+         */
+        private LuceneMorphology acquire() {
+            return switch (mode) {
+                case SHARED -> sharedInstance();
+                case THREAD_LOCAL -> perThread.get();
+                case POOL -> fromPool();
+            };
+        }
+
+        /**
+         * Возвращает экземпляр в пул (в остальных режимах ничего не делает).
+         *
+         * @param morphology {@link LuceneMorphology} экземпляр
+         */
+        private void release(LuceneMorphology morphology) {
+            if (mode == MorphologyMode.POOL) {
+                idle.offer(morphology);
+            }
+        }
+
+        /**
+         * Возвращает общий экземпляр языка, загружая его при первом обращении.
+         *
+         * @return {@link LuceneMorphology} экземпляр
+         */
+        private LuceneMorphology sharedInstance() {
+            LuceneMorphology result = shared;
+            if (result == null) {
+                synchronized (this) {
+                    result = shared;
+                    if (result == null) {
+                        result = load();
+                        shared = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Берёт свободный экземпляр пула, создаёт новый, если пул не заполнен, иначе ждёт освобождения.
+         *
+         * @return {@link LuceneMorphology} экземпляр
+         */
+        private LuceneMorphology fromPool() {
+            LuceneMorphology result = idle.poll();
+            if (result != null) {
+                return result;
+            }
+            int created = instances.get();
+            while (created < poolSize) {
+                if (instances.compareAndSet(created, created + 1)) {
+                    try {
+                        return load();
+                    } catch (RuntimeException e) {
+                        instances.decrementAndGet();
+                        throw e;
+                    }
+                }
+                created = instances.get();
+            }
+            contended.increment();
+            try {
+                return idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ожидание морфологического анализатора прервано", e);
+            }
+        }
+
+        /**
+         * Загружает словарь языка и учитывает время загрузки и занятую память.
+         *
+         * @return {@link LuceneMorphology} новый экземпляр
+         */
+        private LuceneMorphology load() {
+            Runtime runtime = Runtime.getRuntime();
+            long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+            long started = System.nanoTime();
+            LuceneMorphology morphology;
+            try {
+                morphology = language == Language.RUSSIAN
+                        ? new RussianLuceneMorphology()
+                        : new EnglishLuceneMorphology();
+            } catch (IOException e) {
+                throw new RuntimeException("Не удалось инициализировать морфологический анализатор " + language, e);
+            }
+            long elapsed = System.nanoTime() - started;
+            long bytes = Math.max(0L, runtime.totalMemory() - runtime.freeMemory() - usedBefore);
+            loadNanos.addAndGet(elapsed);
+            loadBytes.addAndGet(bytes);
+            if (mode != MorphologyMode.POOL) {
+                instances.incrementAndGet();
+            }
+            log.info("Загружен словарь морфологии {} ({}): {} мс, ~{} МБ", language, Thread.currentThread().getName(),
+                    elapsed / 1_000_000, bytes / (1024 * 1024));
+            return morphology;
+        }
+
+        /**
+         * Возвращает сводку по языку.
+         *
+         * @return {@link String} сводка
+         */
+        private String summary() {
+            long total = calls.sum();
+            return String.format("%s: экземпляров %d, загрузка %d мс, ~%d МБ, обращений %d, с конкуренцией %d (%.1f%%), "
+                            + "ожидание %d мс, разбор %d мс",
+                    language, instances.get(), loadNanos.get() / 1_000_000, loadBytes.get() / (1024 * 1024), total,
+                    contended.sum(), total == 0 ? 0d : contended.sum() * 100d / total,
+                    waitNanos.sum() / 1_000_000, busyNanos.sum() / 1_000_000);
+        }
+    }
+}
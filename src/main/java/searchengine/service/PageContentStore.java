@@ -0,0 +1,265 @@
+package searchengine.service;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.ContentStorageConfig;
+import searchengine.config.IndexingConfig;
+import searchengine.model.entity.Page;
+import searchengine.model.entity.PageContent;
+import searchengine.model.enums.ContentStorageMode;
+import searchengine.repository.PageContentRepository;
+import searchengine.repository.PageRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Запись и чтение HTML-кода страниц.
+ *
+ * <p>В режиме {@link ContentStorageMode#COMPRESSED} HTML-код сжимается алгоритмом Deflate и хранится в таблице
+ * {@code page_content}, а столбец {@code page.content} остаётся пустым: строки {@code page} короткие, поэтому
+ * выборки страниц и подсчёты по таблице не читают HTML-код. Распаковка выполняется только при чтении HTML-кода.
+ * В режиме {@link ContentStorageMode#INLINE} HTML-код пишется в {@code page.content}, как раньше.</p>
+ *
+ * <p>Чтение поддерживает оба способа хранения: страницы, записанные до смены режима, читаются
+ * из {@code page.content}.</p>
+ *
+ * <p>Учитываются объём HTML-кода до и после сжатия и время чтения (запрос {@code page_content} и распаковка).</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Component
+public class PageContentStore {
+
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final InMemoryIndex inMemoryIndex;
+    private final ContentStorageMode mode;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    private final LongAdder pagesWritten = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder pagesRead = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+
+    /**
+     * Создаёт хранилище HTML-кода страниц.
+     *
+     * @param pageRepository {@link PageRepository} репозиторий страниц
+     * @param pageContentRepository {@link PageContentRepository} репозиторий сжатого HTML-кода
+     * @param inMemoryIndex {@link InMemoryIndex} индекс в памяти (учёт количества страниц сайта)
+     * @param config {@link IndexingConfig} настройки индексации (режим хранения и уровень сжатия)
+     */
+    public PageContentStore(PageRepository pageRepository, PageContentRepository pageContentRepository,
+                            InMemoryIndex inMemoryIndex, IndexingConfig config) {
+        this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.inMemoryIndex = inMemoryIndex;
+        ContentStorageConfig storage = config.getContentStorage();
+        this.mode = storage.getMode();
+        int level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, storage.getCompressionLevel()));
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    /**
+     * Сохраняет страницу и её HTML-код согласно режиму хранения.
+     *
+     * @param page {@link Page} новая страница (поле {@code content} заполняется здесь)
+     * @param html {@link String} HTML-код страницы
+     * @return {@link Page} сохранённая страница
+     */
+    public Page save(Page page, String html) {
+        if (mode == ContentStorageMode.INLINE) {
+            page.setContent(html);
+            Page saved = pageRepository.save(page);
+            inMemoryIndex.onPageStored(saved.getSite().getId(), saved.getId());
+            pagesWritten.increment();
+            return saved;
+        }
+        page.setContent(null);
+        Page saved = pageRepository.save(page);
+        inMemoryIndex.onPageStored(saved.getSite().getId(), saved.getId());
+        byte[] raw = html.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress(raw);
+        pageContentRepository.save(PageContent.builder()
+                .pageId(saved.getId())
+                .rawLength(raw.length)
+                .data(compressed)
+                .build());
+        pagesWritten.increment();
+        rawBytes.add(raw.length);
+        storedBytes.add(compressed.length);
+        return saved;
+    }
+
+    /**
+     * Записывает новую версию сохранённой страницы и её HTML-код, не заменяя строку {@code page}.
+     *
+     * <p>Страница обновляется запросом {@code UPDATE}, а не слиянием сущности, поэтому связанные
+     * строки {@code search_index} не затрагиваются.</p>
+     *
+     * @param page {@link Page} новая версия страницы с ID сохранённой страницы (в контекст JPA не добавляется)
+     * @param html {@link String} HTML-код страницы
+     */
+    public void update(Page page, String html) {
+        if (mode == ContentStorageMode.INLINE) {
+            updateRow(page, html);
+            pageContentRepository.deleteByPageId(page.getId());
+            pagesWritten.increment();
+            return;
+        }
+        updateRow(page, null);
+        byte[] raw = html.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress(raw);
+        pageContentRepository.save(PageContent.builder()
+                .pageId(page.getId())
+                .rawLength(raw.length)
+                .data(compressed)
+                .build());
+        pagesWritten.increment();
+        rawBytes.add(raw.length);
+        storedBytes.add(compressed.length);
+    }
+
+    /**
+     * Возвращает HTML-код страниц, распаковывая его при необходимости.
+     *
+     * @param pages {@link List}<{@link Page}> страницы
+     * @return {@link Map}<{@link Integer}, {@link String}> HTML-код по ID страницы (страницы без HTML-кода отсутствуют)
+     */
+    public Map<Integer, String> loadHtml(List<Page> pages) {
+        long started = System.nanoTime();
+        Map<Integer, String> result = new HashMap<>();
+        List<Integer> stored = new ArrayList<>();
+        for (Page page : pages) {
+            if (page.getContent() != null) {
+                result.put(page.getId(), page.getContent());
+            } else {
+                stored.add(page.getId());
+            }
+        }
+        if (!stored.isEmpty()) {
+            for (PageContent content : pageContentRepository.findAllByPageIdIn(stored)) {
+                result.put(content.getPageId(), decompress(content));
+            }
+        }
+        pagesRead.add(pages.size());
+        readNanos.add(System.nanoTime() - started);
+        return result;
+    }
+
+    /**
+     * Возвращает HTML-код одной страницы.
+     *
+     * @param pageId ID страницы
+     * @return {@link String} HTML-код или {@code null}, если страница не найдена
+     */
+    public String loadHtml(int pageId) {
+        long started = System.nanoTime();
+        String html = pageContentRepository.findById(pageId)
+                .map(this::decompress)
+                .orElseGet(() -> pageRepository.findById(pageId).map(Page::getContent).orElse(null));
+        pagesRead.increment();
+        readNanos.add(System.nanoTime() - started);
+        return html;
+    }
+
+    /**
+     * Удаляет страницу и её сжатый HTML-код. Строка {@code page} удаляется запросом {@code DELETE}, а не через
+     * контекст JPA; строки {@code search_index} страницы к этому моменту должны быть уже удалены.
+     *
+     * @param page {@link Page} страница с ID и сайтом (в контекст JPA не добавляется)
+     */
+    public void delete(Page page) {
+        pageContentRepository.deleteByPageId(page.getId());
+        pageRepository.deleteRowById(page.getId());
+        inMemoryIndex.onPageDeleted(page.getSite().getId(), page.getId());
+    }
+
+    /**
+     * Возвращает краткую сводку по объёму записанного HTML-кода и времени чтения для записи в лог.
+     *
+     * @return {@link String} сводка
+     */
+    public String summary() {
+        long raw = rawBytes.sum();
+        long read = pagesRead.sum();
+        return String.format("HTML-код (%s): записано страниц %d, %d КБ -> %d КБ (%.1f%%), прочитано страниц %d, "
+                        + "%.0f мкс на страницу",
+                mode, pagesWritten.sum(), raw / 1024, storedBytes.sum() / 1024,
+                raw == 0 ? 100d : storedBytes.sum() * 100d / raw, read,
+                read == 0 ? 0d : readNanos.sum() / 1000d / read);
+    }
+
+    /**
+     * Обновляет поля строки {@code page}.
+     *
+     * @param page {@link Page} новая версия страницы
+     * @param content {@link String} значение столбца {@code content}
+     */
+    private void updateRow(Page page, String content) {
+        pageRepository.updateVersion(page.getId(), page.getCode(), page.getTitle(), page.getText(), content,
+                page.getEtag(), page.getLastModified(), page.getContentHash());
+    }
+
+    /**
+     * Сжимает HTML-код в потоке с переиспользуемым {@link Deflater}.
+     *
+     * @param raw HTML-код в UTF-8
+     * @return сжатые данные
+     */
+    private byte[] compress(byte[] raw) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(64, raw.length / 4)];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Распаковывает HTML-код страницы.
+     *
+     * @param content {@link PageContent} сжатые данные
+     * @return {@link String} HTML-код
+     */
+    private String decompress(PageContent content) {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(content.getData());
+        byte[] raw = new byte[content.getRawLength()];
+        try {
+            int size = 0;
+            while (size < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, size, raw.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != raw.length) {
+                throw new IllegalStateException("HTML-код страницы " + content.getPageId() + " повреждён: распаковано "
+                        + size + " из " + raw.length + " байт");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Не удалось распаковать HTML-код страницы " + content.getPageId(), e);
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+}
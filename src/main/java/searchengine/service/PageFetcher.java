@@ -0,0 +1,186 @@
+package searchengine.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.IndexingConfig;
+import searchengine.model.dto.indexing.PageState;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Асинхронная загрузка страниц через {@link HttpClient}.
+ *
+ * <p>Запросы не занимают поток на время ожидания ответа: клиент мультиплексирует соединения на небольшом
+ * числе потоков, поэтому количество одновременных запросов ограничивается только лимитом сайта.
+ * Тело нетекстовых ответов не скачивается. При повторном обходе запросы могут быть условными
+ * ({@link #fetch(String, PageState)}).</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Service
+@Slf4j
+public class PageFetcher {
+
+    private final IndexingConfig config;
+    private final HttpClient httpClient;
+
+    /**
+     * Создаёт загрузчик с общим для всех сайтов {@link HttpClient}.
+     *
+     * @param config {@link IndexingConfig} настройки индексации
+     */
+    public PageFetcher(IndexingConfig config) {
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(config.getFetchTimeoutMs()))
+                .build();
+    }
+
+    /**
+     * Запускает загрузку страницы.
+     *
+     * @param url {@link String} абсолютный URL
+     * @return {@link CompletableFuture}<{@link FetchedPage}> загруженная страница; завершается исключением
+     * при сетевой ошибке или тайм-ауте
+     */
+    public CompletableFuture<FetchedPage> fetch(String url) {
+        return fetch(url, null);
+    }
+
+    /**
+     * Запускает загрузку страницы условным запросом: если у сохранённой страницы есть {@code ETag}
+     * или {@code Last-Modified}, они передаются в {@code If-None-Match}/{@code If-Modified-Since}, и неизменившаяся
+     * страница возвращается кодом 304 без тела.
+     *
+     * @param url {@link String} абсолютный URL
+     * @param known {@link PageState} сохранённое состояние страницы или {@code null}
+     * @return {@link CompletableFuture}<{@link FetchedPage}> загруженная страница; завершается исключением
+     * при сетевой ошибке или тайм-ауте
+     */
+    public CompletableFuture<FetchedPage> fetch(String url, PageState known) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(config.getFetchTimeoutMs()))
+                .header("User-Agent", config.getUserAgent())
+                .GET();
+        if (config.getReferrer() != null) {
+            request.header("Referer", config.getReferrer());
+        }
+        if (known != null && known.etag() != null) {
+            request.header("If-None-Match", known.etag());
+        }
+        if (known != null && known.lastModified() != null) {
+            request.header("If-Modified-Since", known.lastModified());
+        }
+        return httpClient.sendAsync(request.build(), PageFetcher::bodyHandler)
+                .thenApply(response -> new FetchedPage(response.uri().toString(), response.statusCode(),
+                        contentType(response.headers()), charset(response.headers()), response.body(),
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null)));
+    }
+
+    /**
+     * Читает тело только успешных текстовых ответов, остальные отбрасывает без загрузки.
+     *
+     * @param info {@link HttpResponse.ResponseInfo} код и заголовки ответа
+     * @return {@link HttpResponse.BodySubscriber} обработчик тела ответа
+     */
+    private static HttpResponse.BodySubscriber<byte[]> bodyHandler(HttpResponse.ResponseInfo info) {
+        if (info.statusCode() >= 400 || !isText(contentType(info.headers()))) {
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        return HttpResponse.BodySubscribers.ofByteArray();
+    }
+
+    /**
+     * Возвращает хэш тела ответа для сравнения содержимого страницы при повторном обходе.
+     *
+     * @param body тело ответа или {@code null}
+     * @return {@link String} SHA-256 в шестнадцатеричном виде или {@code null}
+     */
+    static String contentHash(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    /**
+     * Возвращает значение заголовка-валидатора ({@code ETag}, {@code Last-Modified}), если оно помещается в столбец.
+     *
+     * @param value {@link String} значение заголовка или {@code null}
+     * @param maxLength длина столбца
+     * @return {@link String} значение или {@code null}, если оно отсутствует или слишком длинное
+     */
+    static String validator(String value, int maxLength) {
+        return value == null || value.length() > maxLength ? null : value;
+    }
+
+    /**
+     * Проверяет, что content-type ответа текстовый (HTML, XML и т. п.).
+     *
+     * @param contentType {@link String} значение заголовка Content-Type
+     * @return true для текстового содержимого
+     */
+    static boolean isText(String contentType) {
+        return contentType != null && (contentType.startsWith("text/") || contentType.contains("xml"));
+    }
+
+    /**
+     * Возвращает тип содержимого из заголовка Content-Type без параметров.
+     *
+     * @param headers {@link HttpHeaders} заголовки ответа
+     * @return {@link String} тип содержимого в нижнем регистре или {@code null}
+     */
+    private static String contentType(HttpHeaders headers) {
+        return headers.firstValue("Content-Type")
+                .map(value -> value.split(";", 2)[0].trim().toLowerCase(Locale.ROOT))
+                .orElse(null);
+    }
+
+    /**
+     * Возвращает кодировку из заголовка Content-Type.
+     *
+     * @param headers {@link HttpHeaders} заголовки ответа
+     * @return {@link String} кодировка или {@code null}, если она не указана (её определит парсер)
+     */
+    private static String charset(HttpHeaders headers) {
+        String value = headers.firstValue("Content-Type").orElse("");
+        for (String part : value.split(";")) {
+            String param = part.trim();
+            if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                return param.substring(8).replace("\"", "").trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Загруженная страница.
+     *
+     * @param url итоговый URL (после редиректов)
+     * @param statusCode HTTP-код ответа
+     * @param contentType тип содержимого без параметров или {@code null}
+     * @param charset кодировка из заголовка или {@code null}
+     * @param body тело ответа или {@code null}, если оно не загружалось
+     * @param etag значение заголовка {@code ETag} или {@code null}
+     * @param lastModified значение заголовка {@code Last-Modified} или {@code null}
+     */
+    public record FetchedPage(String url, int statusCode, String contentType, String charset, byte[] body,
+                              String etag, String lastModified) {
+    }
+}
@@ -2,32 +2,35 @@ package searchengine.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
-import org.jsoup.UnsupportedMimeTypeException;
 import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import searchengine.config.IndexingConfig;
 import searchengine.config.SiteConfig;
 import searchengine.model.dto.indexing.IndexPageResponse;
-import searchengine.model.entity.Lemma;
 import searchengine.model.entity.Page;
 import searchengine.model.entity.Site;
 import searchengine.model.enums.SiteStatus;
-import searchengine.repository.IndexSearchRepository;
-import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 
 import java.net.URI;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 /**
- * Сервис индексации отдельной страницы (эндпоинт {@code /api/indexPage}).
- * 
+ * Сервис индексации отдельных страниц (эндпоинты {@code /api/indexPage} и {@code /api/indexPages}).
+ *
+ * <p>Индексация страницы разделена на этапы: загрузка ({@link PageFetcher}, без обращения к БД), разбор
+ * и лемматизация ({@link #prepare(SiteConfig, String, PageFetcher.FetchedPage)}) и запись ({@link #write(List)}).
+ * Соединение с БД берётся только на время записи, поэтому медленный сайт не удерживает соединения пула.</p>
+ *
+ * <p>Пока сайт переиндексируется в теневое поколение ({@link ShadowReindexes}), страницы этого сайта не записываются:
+ * текущее поколение после переключения будет удалено вместе с ними.</p>
+ *
  * @author Tseliar Vladimir
  */
 @Service
@@ -35,143 +38,146 @@ import java.util.Map;
 @Slf4j
 public class PageIndexingService {
 
+    static final String OUTSIDE_SITES_ERROR =
+            "Данная страница находится за пределами сайтов, указанных в конфигурационном файле";
+    static final String SHADOW_REINDEX_ERROR =
+            "Сайт переиндексируется, повторите запрос после завершения индексации";
+
     private final IndexingConfig config;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexSearchRepository indexRepository;
-    private final LemmaFinder lemmaFinder;
+    private final DocumentProcessor documentProcessor;
     private final LemmaIndexingService lemmaIndexingService;
+    private final IndexGenerations indexGenerations;
+    private final IndexingMetrics indexingMetrics;
+    private final PageContentStore pageContentStore;
+    private final PageFetcher pageFetcher;
+    private final TransactionTemplate transactionTemplate;
+    private final ShadowReindexes shadowReindexes;
 
     /**
-     * Индексирует одну страницу по URL: сохраняет страницу в БД, извлекает леммы и сохраняет связи в индексе.
+     * Разобранная и лемматизированная страница, готовая к записи в БД.
+     *
+     * @param siteConfig {@link SiteConfig} сайт из конфигурации
+     * @param version {@link Page} новая версия страницы (без сайта и ID, при записи копируется)
+     * @param html {@link String} HTML-код страницы
+     * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> леммы и их количество на странице
+     */
+    public record PreparedPage(SiteConfig siteConfig, Page version, String html, Map<String, Integer> lemmaCounts) {
+    }
+
+    /**
+     * Индексирует одну страницу по URL: загружает её, сохраняет страницу в БД, извлекает леммы и сохраняет связи
+     * в индексе.
      *
      * @param url {@link String} URL страницы
      * @return {@link IndexPageResponse} DTO-ответ о результате операции
      */
-    @Transactional
     public IndexPageResponse indexPage(String url) {
         SiteConfig siteConfig = findSiteConfig(url);
         if (siteConfig == null) {
-            return new IndexPageResponse(false,
-                    "Данная страница находится за пределами сайтов, указанных в конфигурационном файле");
+            return new IndexPageResponse(false, OUTSIDE_SITES_ERROR);
+        }
+        if (shadowReindexes.isActive(siteConfig.getUrl())) {
+            return new IndexPageResponse(false, SHADOW_REINDEX_ERROR);
         }
-        Site site = null;
-        boolean siteExisted = false;
-        SiteStatus previousStatus = null;
-        String previousError = null;
         try {
-            URI uri = URI.create(url);
-            String siteUrl = siteConfig.getUrl();
-            String path = uri.getPath();
-            if (path.isEmpty()) path = "/";
-            site = siteRepository.findByUrl(siteUrl).orElse(null);
-            siteExisted = site != null;
-            if (siteExisted) {
-                previousStatus = site.getStatus();
-                previousError = site.getLastError();
-            } else {
-                site = siteRepository.save(
-                        Site.builder()
-                                .url(siteUrl)
-                                .name(siteConfig.getName())
-                                .status(SiteStatus.INDEXING)
-                                .statusTime(LocalDateTime.now())
-                                .build()
-                );
-            }
-
-            Connection.Response response = Jsoup.connect(url)
-                    .userAgent(config.getUserAgent())
-                    .referrer(config.getReferrer())
-                    .timeout(10000)
-                    .followRedirects(true)
-                    .ignoreHttpErrors(true)
-                    .execute();
-            int statusCode = response.statusCode();
-            if (statusCode >= 400) {
-                updateSiteAfterFailure(site, siteExisted, previousStatus, previousError,
-                        "Ошибка индексации страницы: HTTP " + statusCode);
-                return new IndexPageResponse(false, "Не удалось проиндексировать страницу: HTTP " + statusCode);
-            }
-            String contentType = response.contentType();
-            if (contentType == null || !(contentType.startsWith("text/") || contentType.contains("xml"))) {
-                updateSiteAfterFailure(site, siteExisted, previousStatus, previousError,
-                        "Ошибка индексации страницы: неподдерживаемый Content-Type " + contentType);
-                return new IndexPageResponse(false, "Не удалось проиндексировать страницу: неподдерживаемый Content-Type " + contentType);
-            }
-            String html = response.body();
-
-            pageRepository.findBySiteAndPath(site, path)
-                    .ifPresent(this::removePageData);
-
-            Page page = pageRepository.save(
-                    Page.builder()
-                            .site(site)
-                            .path(path)
-                            .code(statusCode)
-                            .content(html)
-                            .build()
-            );
-            Map<String, Integer> lemmaCounts = lemmaFinder.collectLemmas(html);
-            if (lemmaCounts != null && !lemmaCounts.isEmpty()) {
-                saveLemmasWithRetry(page, lemmaCounts, site);
-            }
-            if (siteExisted && previousStatus == SiteStatus.INDEXING) {
-                site.setStatus(SiteStatus.INDEXING);
-            } else {
-                site.setStatus(SiteStatus.INDEXED);
-            }
-            site.setStatusTime(LocalDateTime.now());
-            site.setLastError(null);
-            siteRepository.save(site);
+            PageFetcher.FetchedPage fetched = pageFetcher.fetch(url).join();
+            write(List.of(prepare(siteConfig, url, fetched)));
             return new IndexPageResponse(true, null);
-        } catch (UnsupportedMimeTypeException e) {
-            log.debug("Неподдерживаемый content-type при индексации {}: {}", url, e.getMimeType());
-            updateSiteAfterFailure(site, siteExisted, previousStatus, previousError,
-                    "Ошибка индексации страницы: неподдерживаемый Content-Type " + e.getMimeType());
-            return new IndexPageResponse(false, "Не удалось проиндексировать страницу: неподдерживаемый Content-Type " + e.getMimeType());
         } catch (Exception e) {
-            log.error("Ошибка индексации страницы {}: {}", url, e.getMessage(), e);
-            updateSiteAfterFailure(site, siteExisted, previousStatus, previousError,
-                    "Ошибка индексации страницы: " + e.getMessage());
-            return new IndexPageResponse(false, "Не удалось проиндексировать страницу: " + e.getMessage());
+            recordFailure(url, siteConfig, e);
+            return new IndexPageResponse(false, "Не удалось проиндексировать страницу: " + errorMessage(e));
         }
     }
 
     /**
-     * Обновляет статус сайта после неудачной попытки индексации страницы.
+     * Проверяет ответ сервера, разбирает страницу и собирает её леммы (без обращения к БД).
      *
-     * <p>Если сайт уже существовал в БД, статус и lastError возвращаются к предыдущим значениям,
-     * чтобы не оставлять сайт в состоянии INDEXING из-за ошибки одной страницы.</p>
+     * @param siteConfig {@link SiteConfig} сайт из конфигурации
+     * @param url {@link String} запрошенный URL страницы
+     * @param fetched {@link PageFetcher.FetchedPage} ответ сервера
+     * @return {@link PreparedPage} страница для записи
+     * @throws IllegalStateException если страницу нельзя проиндексировать (код ошибки или не-текстовый ответ)
+     */
+    PreparedPage prepare(SiteConfig siteConfig, String url, PageFetcher.FetchedPage fetched) {
+        if (fetched.statusCode() >= 400) {
+            throw new IllegalStateException("HTTP " + fetched.statusCode());
+        }
+        if (!PageFetcher.isText(fetched.contentType()) || fetched.body() == null) {
+            throw new IllegalStateException("неподдерживаемый Content-Type " + fetched.contentType());
+        }
+        DocumentProcessor.ParsedDocument document = documentProcessor.parse(fetched.body(), fetched.charset(),
+                fetched.url());
+        String path = URI.create(url).getPath();
+        Page version = Page.builder()
+                .path(path == null || path.isEmpty() ? "/" : path)
+                .code(fetched.statusCode())
+                .title(document.title())
+                .text(document.text())
+                .etag(PageFetcher.validator(fetched.etag(), 255))
+                .lastModified(PageFetcher.validator(fetched.lastModified(), 64))
+                .contentHash(PageFetcher.contentHash(fetched.body()))
+                .build();
+        return new PreparedPage(siteConfig, version, document.html(), documentProcessor.lemmatize(document));
+    }
+
+    /**
+     * Записывает подготовленные страницы в одной транзакции (с повторами при дедлоках).
      *
-     * <p>Если сайт был создан в рамках текущего вызова, он переводится в статус FAILED и получает lastError.</p>
+     * <p>Сохранённые ранее страницы обновляются на месте с записью разницы лемм, леммы новых страниц копятся
+     * в буфере сайта и записываются пакетными запросами в конце транзакции. Если сайта ещё нет в БД, он создаётся.
+     * Статус сайта становится {@link SiteStatus#INDEXED}, если сайт не индексируется в этот момент.</p>
      *
-     * @param site {@link Site} сайт
-     * @param siteExisted признак, что сайт существовал до вызова
-     * @param previousStatus {@link SiteStatus} статус сайта до попытки индексации страницы
-     * @param previousError {@link String} lastError сайта до попытки индексации страницы
-     * @param error {@link String} текст ошибки для нового сайта
+     * @param pages {@link List}<{@link PreparedPage}> страницы (при совпадении пути записывается последняя)
      */
-    private void updateSiteAfterFailure(
-            Site site,
-            boolean siteExisted,
-            SiteStatus previousStatus,
-            String previousError,
-            String error
-    ) {
-        if (site == null) {
-            return;
-        }
-        if (siteExisted) {
-            site.setStatus(previousStatus);
-            site.setLastError(previousError);
+    void write(List<PreparedPage> pages) {
+        withLockRetry(() -> transactionTemplate.executeWithoutResult(status -> writePages(pages)));
+    }
+
+    /**
+     * Записывает ошибку индексации страницы в лог и, если сайта ещё нет в БД, создаёт его в статусе
+     * {@link SiteStatus#FAILED}; статус уже сохранённого сайта не меняется.
+     *
+     * @param url {@link String} URL страницы
+     * @param siteConfig {@link SiteConfig} сайт из конфигурации
+     * @param error {@link Throwable} ошибка
+     */
+    void recordFailure(String url, SiteConfig siteConfig, Throwable error) {
+        Throwable cause = unwrap(error);
+        String message = errorMessage(cause);
+        if (cause instanceof IllegalStateException) {
+            log.debug("Страница {} не проиндексирована: {}", url, message);
         } else {
-            site.setStatus(SiteStatus.FAILED);
-            site.setLastError(error);
+            log.error("Ошибка индексации страницы {}: {}", url, message, cause);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (siteRepository.findLiveByUrl(siteConfig.getUrl()).isPresent()) {
+                    return;
+                }
+                siteRepository.save(Site.builder()
+                        .url(siteConfig.getUrl())
+                        .name(siteConfig.getName())
+                        .status(SiteStatus.FAILED)
+                        .statusTime(LocalDateTime.now())
+                        .lastError("Ошибка индексации страницы: " + message)
+                        .build());
+            });
+        } catch (Exception e) {
+            log.warn("Не удалось записать ошибку индексации сайта {}: {}", siteConfig.getUrl(), e.getMessage());
         }
-        site.setStatusTime(LocalDateTime.now());
-        siteRepository.save(site);
+    }
+
+    /**
+     * Возвращает текст ошибки для ответа API (без обёрток {@link CompletionException}).
+     *
+     * @param error {@link Throwable} ошибка
+     * @return {@link String} текст ошибки
+     */
+    static String errorMessage(Throwable error) {
+        Throwable cause = unwrap(error);
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
     }
 
     /**
@@ -180,7 +186,7 @@ public class PageIndexingService {
      * @param url {@link String} URL страницы
      * @return {@link SiteConfig} конфигурация сайта или {@code null}
      */
-    private SiteConfig findSiteConfig(String url) {
+    SiteConfig findSiteConfig(String url) {
         for (SiteConfig siteConfig : config.getSites()) {
             String baseUrl = siteConfig.getUrl();
             if (url.startsWith(baseUrl)) {
@@ -197,44 +203,143 @@ public class PageIndexingService {
     }
 
     /**
-     * Удаляет информацию о странице перед переиндексацией: записи в {@code search_index}, саму страницу,
-     * а также удаляет/пересчитывает frequency у затронутых лемм.
+     * Записывает новую версию сохранённой страницы, не заменяя строку {@code page}: обновляет поля страницы
+     * и HTML-код и применяет к леммам и индексу только разницу между версиями
+     * ({@link LemmaIndexingService#updatePageIndex(Page, Map, Site)}). Строка страницы, HTML-код и индекс
+     * обновляются в одной транзакции.
+     *
+     * @param page {@link Page} новая версия страницы с ID и сайтом сохранённой страницы
+     * @param html {@link String} HTML-код страницы
+     * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> леммы и их количество на странице
+     */
+    public void updatePage(Page page, String html, Map<String, Integer> lemmaCounts) {
+        withLockRetry(() -> transactionTemplate.executeWithoutResult(status -> {
+            pageContentStore.update(page, html);
+            lemmaIndexingService.updatePageIndex(page, lemmaCounts, page.getSite());
+        }));
+        indexGenerations.bump(page.getSite().getId());
+    }
+
+    /**
+     * Удаляет сохранённую страницу, которой больше нет на сайте: снимает её леммы с индекса как разницу с пустой
+     * версией ({@link LemmaIndexingService#updatePageIndex(Page, Map, Site)}) и удаляет HTML-код и строку страницы
+     * в одной транзакции.
+     *
+     * @param page {@link Page} страница с ID и сайтом
+     */
+    public void deletePage(Page page) {
+        withLockRetry(() -> transactionTemplate.executeWithoutResult(status -> {
+            lemmaIndexingService.updatePageIndex(page, Map.of(), page.getSite());
+            pageContentStore.delete(page);
+        }));
+        indexGenerations.bump(page.getSite().getId());
+    }
+
+    /**
+     * Записывает страницы в текущей транзакции.
      *
-     * @param page {@link Page} страница
+     * @param pages {@link List}<{@link PreparedPage}> страницы
      */
-    private void removePageData(Page page) {
-        List<Lemma> lemmas = lemmaRepository.findLemmasByPage(page);
-        indexRepository.deleteByPage(page);
-        pageRepository.delete(page);
-
-        for (Lemma lemma : lemmas) {
-            long usage = lemmaRepository.countUsageByLemma(lemma);
-            if (usage <= 0) {
-                lemmaRepository.delete(lemma);
+    private void writePages(List<PreparedPage> pages) {
+        Map<String, PreparedPage> unique = new LinkedHashMap<>();
+        for (PreparedPage page : pages) {
+            unique.put(page.siteConfig().getUrl() + '\n' + page.version().getPath(), page);
+        }
+        Map<String, SiteWrite> sites = new LinkedHashMap<>();
+        for (PreparedPage prepared : unique.values()) {
+            SiteWrite target = sites.computeIfAbsent(prepared.siteConfig().getUrl(),
+                    url -> openSite(prepared.siteConfig()));
+            Page source = prepared.version();
+            Page version = Page.builder()
+                    .site(target.site())
+                    .path(source.getPath())
+                    .code(source.getCode())
+                    .title(source.getTitle())
+                    .text(source.getText())
+                    .etag(source.getEtag())
+                    .lastModified(source.getLastModified())
+                    .contentHash(source.getContentHash())
+                    .build();
+            Map<String, Integer> lemmaCounts = prepared.lemmaCounts() == null ? Map.of() : prepared.lemmaCounts();
+            Integer pageId = pageRepository.findIdBySiteAndPath(target.site(), version.getPath()).orElse(null);
+            if (pageId != null) {
+                version.setId(pageId);
+                pageContentStore.update(version, prepared.html());
+                lemmaIndexingService.updatePageIndex(version, lemmaCounts, target.site());
             } else {
-                lemma.setFrequency((int) usage);
-                lemmaRepository.save(lemma);
+                Page page = pageContentStore.save(version, prepared.html());
+                if (!lemmaCounts.isEmpty()) {
+                    target.buffer().add(page.getId(), lemmaCounts);
+                }
+            }
+        }
+        for (SiteWrite target : sites.values()) {
+            lemmaIndexingService.flushBuffer(target.site(), target.buffer(), true);
+            Site site = target.site();
+            if (target.created() || site.getStatus() != SiteStatus.INDEXING) {
+                site.setStatus(SiteStatus.INDEXED);
+                site.setLastError(null);
             }
+            site.setStatusTime(LocalDateTime.now());
+            siteRepository.save(site);
+            indexGenerations.bump(site.getId());
         }
     }
 
     /**
-     * Сохраняет леммы/индекс с повторными попытками при дедлоках в MySQL.
+     * Находит текущее поколение сайта или создаёт запись сайта.
      *
-     * @param page {@link Page} страница
-     * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> леммы и их количество на странице
-     * @param site {@link Site} сайт
+     * @param siteConfig {@link SiteConfig} сайт из конфигурации
+     * @return {@link SiteWrite} сайт и буфер лемм его новых страниц
+     * @throws IllegalStateException если сайт переиндексируется в теневое поколение
+     */
+    private SiteWrite openSite(SiteConfig siteConfig) {
+        if (shadowReindexes.isActive(siteConfig.getUrl())) {
+            throw new IllegalStateException(SHADOW_REINDEX_ERROR);
+        }
+        Site site = siteRepository.findLiveByUrl(siteConfig.getUrl()).orElse(null);
+        boolean created = site == null;
+        if (created) {
+            site = siteRepository.save(Site.builder()
+                    .url(siteConfig.getUrl())
+                    .name(siteConfig.getName())
+                    .status(SiteStatus.INDEXING)
+                    .statusTime(LocalDateTime.now())
+                    .build());
+        }
+        return new SiteWrite(site, created, new SiteLemmaBuffer(Long.MAX_VALUE));
+    }
+
+    /**
+     * Возвращает исходную ошибку из обёрток {@link CompletionException}.
+     *
+     * @param error {@link Throwable} ошибка
+     * @return {@link Throwable} исходная ошибка
+     */
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Выполняет запись с повторными попытками при дедлоках в MySQL.
+     *
+     * @param write {@link Runnable} запись страниц, лемм и строк индекса
      */
-    private void saveLemmasWithRetry(Page page, Map<String, Integer> lemmaCounts, Site site) {
+    private void withLockRetry(Runnable write) {
         int attempt = 0;
         while (true) {
             try {
-                lemmaIndexingService.saveLemmasAndIndex(page, lemmaCounts, site);
+                write.run();
                 return;
             } catch (CannotAcquireLockException e) {
                 if (attempt++ >= 5) {
                     throw e;
                 }
+                indexingMetrics.recordLockRetry();
                 try {
                     Thread.sleep(100L * attempt);
                 } catch (InterruptedException ie) {
@@ -244,4 +349,14 @@ public class PageIndexingService {
             }
         }
     }
+
+    /**
+     * Сайт, в который пишутся страницы транзакции.
+     *
+     * @param site {@link Site} сайт
+     * @param created признак, что сайт создан в этой транзакции
+     * @param buffer {@link SiteLemmaBuffer} леммы новых страниц сайта
+     */
+    private record SiteWrite(Site site, boolean created, SiteLemmaBuffer buffer) {
+    }
 }
@@ -0,0 +1,152 @@
+package searchengine.service;
+
+import searchengine.config.PipelineConfig;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Стадия конвейера обхода: собственный пул потоков и ограниченная очередь задач.
+ *
+ * <p>Если очередь заполнена, {@link #submit(Runnable, Runnable)} блокирует вызывающий поток, пока не освободится место, —
+ * так медленная стадия притормаживает предыдущую вместо неограниченного роста очереди.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+public class PipelineStage {
+
+    private final String name;
+    private final int threads;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * Создаёт стадию и запускает её пул потоков.
+     *
+     * @param name {@link String} имя стадии (для логов и имён потоков)
+     * @param threadPrefix {@link String} префикс имён потоков
+     * @param config {@link PipelineConfig.StageConfig} размер пула и очереди
+     */
+    public PipelineStage(String name, String threadPrefix, PipelineConfig.StageConfig config) {
+        this.name = name;
+        this.threads = Math.max(1, config.getThreads());
+        this.queueCapacity = Math.max(1, config.getQueueCapacity());
+        this.slots = new Semaphore(threads + queueCapacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, threadPrefix + "-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ставит задачу в очередь стадии, ожидая свободного места.
+     *
+     * @param task {@link Runnable} задача
+     * @param onDiscard {@link Runnable} действие, если задача будет отброшена из очереди при {@link #shutdownNow()}
+     * @throws InterruptedException если поток прерван во время ожидания
+     * @throws RejectedExecutionException если стадия уже остановлена
+     */
+    public void submit(Runnable task, Runnable onDiscard) throws InterruptedException {
+        slots.acquire();
+        try {
+            executor.execute(new StageTask(task, onDiscard));
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Возвращает количество задач, ожидающих в очереди стадии.
+     *
+     * @return глубина очереди
+     */
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Возвращает количество выполненных задач в секунду с момента создания стадии.
+     *
+     * @return задач в секунду
+     */
+    public double throughput() {
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000d;
+        return seconds <= 0 ? 0d : completed.sum() / seconds;
+    }
+
+    /**
+     * Немедленно останавливает стадию: задачи в очереди отбрасываются (для каждой выполняется её действие
+     * при отбрасывании), рабочие потоки прерываются.
+     */
+    public void shutdownNow() {
+        for (Runnable dropped : executor.shutdownNow()) {
+            slots.release();
+            if (dropped instanceof StageTask stageTask) {
+                stageTask.onDiscard.run();
+            }
+        }
+    }
+
+    /**
+     * Ожидает завершения потоков стадии после {@link #shutdownNow()}.
+     *
+     * @param timeout время ожидания
+     * @param unit {@link TimeUnit} единица времени
+     * @return true, если все потоки завершились
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Возвращает краткую сводку по стадии для записи в лог.
+     *
+     * @return {@link String} сводка
+     */
+    public String summary() {
+        double elapsedNanos = Math.max(1L, System.nanoTime() - startedAt) * (double) threads;
+        return String.format("%s: очередь %d/%d, потоков %d (занято %d), выполнено %d (%.1f/с), загрузка %.0f%%",
+                name, queueDepth(), queueCapacity, threads, executor.getActiveCount(), completed.sum(),
+                throughput(), busyNanos.sum() * 100d / elapsedNanos);
+    }
+
+    /**
+     * Задача стадии с учётом времени выполнения и действием при отбрасывании из очереди.
+     */
+    private final class StageTask implements Runnable {
+
+        private final Runnable action;
+        private final Runnable onDiscard;
+
+        private StageTask(Runnable action, Runnable onDiscard) {
+            this.action = action;
+            this.onDiscard = onDiscard;
+        }
+
+        @Override
+        public void run() {
+            long started = System.nanoTime();
+            try {
+                action.run();
+            } finally {
+                busyNanos.add(System.nanoTime() - started);
+                completed.increment();
+                slots.release();
+            }
+        }
+    }
+}
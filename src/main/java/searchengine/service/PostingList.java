@@ -0,0 +1,136 @@
+package searchengine.service;
+
+import java.util.Arrays;
+
+/**
+ * Список вхождений одной леммы: ID страниц и rank, отсортированные по ID страницы.
+ *
+ * <p>Данные хранятся в примитивных массивах {@code int[]}/{@code float[]}, чтобы не создавать объект на каждое
+ * вхождение. Класс не потокобезопасен: синхронизация выполняется на уровне индекса сайта.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+public class PostingList {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] pageIds = new int[INITIAL_CAPACITY];
+    private float[] ranks = new float[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Добавляет вхождение страницы или заменяет rank, если страница уже есть в списке.
+     *
+     * <p>Страницы при обходе сохраняются с возрастающими ID, поэтому основной случай — добавление в конец.</p>
+     *
+     * @param pageId ID страницы
+     * @param rank rank леммы на странице
+     */
+    public void put(int pageId, float rank) {
+        if (size == 0 || pageIds[size - 1] < pageId) {
+            ensureCapacity(size + 1);
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+            return;
+        }
+        int pos = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (pos >= 0) {
+            ranks[pos] = rank;
+            return;
+        }
+        int insertAt = -pos - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(pageIds, insertAt, pageIds, insertAt + 1, size - insertAt);
+        System.arraycopy(ranks, insertAt, ranks, insertAt + 1, size - insertAt);
+        pageIds[insertAt] = pageId;
+        ranks[insertAt] = rank;
+        size++;
+    }
+
+    /**
+     * Удаляет вхождение страницы.
+     *
+     * @param pageId ID страницы
+     * @return true, если страница была в списке
+     */
+    public boolean remove(int pageId) {
+        int pos = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(pageIds, pos + 1, pageIds, pos, size - pos - 1);
+        System.arraycopy(ranks, pos + 1, ranks, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * Возвращает позицию первой страницы с ID не меньше заданного, начиная поиск с позиции {@code from}.
+     *
+     * <p>Используется галопирующий поиск: при пересечении списков курсор движется только вперёд,
+     * поэтому длинные списки просматриваются за логарифмическое время от длины пропуска.</p>
+     *
+     * @param pageId искомый ID страницы
+     * @param from позиция, с которой начинается поиск
+     * @return позиция в списке или {@link #size()}, если таких страниц нет
+     */
+    public int advance(int pageId, int from) {
+        if (from >= size || pageIds[from] >= pageId) {
+            return from;
+        }
+        int step = 1;
+        int low = from;
+        int high = from + step;
+        while (high < size && pageIds[high] < pageId) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        int pos = Arrays.binarySearch(pageIds, low + 1, Math.min(high + 1, size), pageId);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    /**
+     * Возвращает ID страницы по позиции.
+     *
+     * @param index позиция в списке
+     * @return ID страницы
+     */
+    public int pageIdAt(int index) {
+        return pageIds[index];
+    }
+
+    /**
+     * Возвращает rank по позиции.
+     *
+     * @param index позиция в списке
+     * @return rank
+     */
+    public float rankAt(int index) {
+        return ranks[index];
+    }
+
+    /**
+     * Возвращает количество страниц в списке (frequency леммы).
+     *
+     * @return количество страниц
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Увеличивает массивы так, чтобы в них поместилось не меньше {@code capacity} элементов.
+     *
+     * @param capacity требуемая ёмкость
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= pageIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, pageIds.length + (pageIds.length >> 1));
+        pageIds = Arrays.copyOf(pageIds, newCapacity);
+        ranks = Arrays.copyOf(ranks, newCapacity);
+    }
+}
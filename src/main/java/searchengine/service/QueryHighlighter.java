@@ -0,0 +1,233 @@
+package searchengine.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Поиск и подсветка слов запроса в тексте за один проход, подготовленные один раз на запрос.
+ *
+ * <p>Слово текста — последовательность букв и цифр. Слово совпадает с запросом, если оно (без учёта регистра) равно
+ * токену запроса — проверяется проходом по префиксному дереву токенов без создания строк — или его лемма входит
+ * в леммы запроса. При подсветке текст экранируется и совпавшие слова оборачиваются в {@code <b>} в том же проходе,
+ * поэтому стоимость линейна по длине текста и не зависит от количества слов запроса.</p>
+ *
+ * <p>Каждому совпадению присваивается номер слова запроса ({@link #matchId(CharSequence, int, int)}): словоформы одной
+ * леммы и токен запроса с этой леммой получают один номер. По номерам считается, сколько разных слов запроса
+ * покрывает фрагмент текста.</p>
+ *
+ * <p>После создания экземпляр только читается, поэтому его можно использовать из нескольких потоков.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+public final class QueryHighlighter {
+
+    private final Node root = new Node();
+    private final Map<String, Integer> lemmaIds = new HashMap<>();
+    private final LemmaFinder lemmaFinder;
+    private final int wordCount;
+
+    /**
+     * Подготавливает поиск слов запроса.
+     *
+     * @param queryTerms {@link Collection}<{@link String}> токены запроса (в нижнем регистре)
+     * @param queryLemmas {@link Set}<{@link String}> леммы запроса или {@code null}
+     * @param lemmaFinder {@link LemmaFinder} анализатор для сопоставления словоформ с леммами
+     */
+    public QueryHighlighter(Collection<String> queryTerms, Set<String> queryLemmas, LemmaFinder lemmaFinder) {
+        this.lemmaFinder = lemmaFinder;
+        if (queryLemmas != null) {
+            for (String lemma : queryLemmas) {
+                lemmaIds.putIfAbsent(lemma, lemmaIds.size());
+            }
+        }
+        int nextId = lemmaIds.size();
+        for (String term : queryTerms) {
+            String lemma = lemmaIds.isEmpty() ? null : lemmaFinder.getLemmaForWord(term);
+            Integer id = lemma == null ? null : lemmaIds.get(lemma);
+            root.add(term, id != null ? id : nextId++);
+        }
+        this.wordCount = nextId;
+    }
+
+    /**
+     * Возвращает количество разных слов запроса (наибольший номер совпадения плюс один).
+     *
+     * @return количество слов запроса
+     */
+    public int wordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Экранирует HTML-символы фрагмента текста и оборачивает совпавшие с запросом слова в {@code <b>}.
+     *
+     * <p>Границы фрагмента считаются границами слов.</p>
+     *
+     * @param text {@link String} текст
+     * @param from начало фрагмента
+     * @param to конец фрагмента (не включая)
+     * @return {@link String} фрагмент в HTML-формате
+     */
+    public String highlight(String text, int from, int to) {
+        StringBuilder out = new StringBuilder((to - from) + 32);
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (!isWordChar(c)) {
+                appendEscaped(out, c);
+                i++;
+                continue;
+            }
+            int end = wordEnd(text, i, to);
+            if (matches(text, i, end)) {
+                out.append("<b>").append(text, i, end).append("</b>");
+            } else {
+                out.append(text, i, end);
+            }
+            i = end;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Проверяет, совпадает ли слово текста с токеном или леммой запроса.
+     *
+     * @param text {@link CharSequence} текст
+     * @param start начало слова
+     * @param end конец слова (не включая)
+     * @return true, если слово нужно подсветить
+     */
+    public boolean matches(CharSequence text, int start, int end) {
+        return matchId(text, start, end) >= 0;
+    }
+
+    /**
+     * Возвращает номер слова запроса, с которым совпадает слово текста.
+     *
+     * @param text {@link CharSequence} текст
+     * @param start начало слова
+     * @param end конец слова (не включая)
+     * @return номер от {@code 0} до {@link #wordCount()} (не включая) или {@code -1}, если совпадения нет
+     */
+    public int matchId(CharSequence text, int start, int end) {
+        int id = root.find(text, start, end);
+        if (id >= 0 || lemmaIds.isEmpty()) {
+            return id;
+        }
+        String lemma = lemmaFinder.getLemmaForWord(text, start, end);
+        Integer lemmaId = lemma == null ? null : lemmaIds.get(lemma);
+        return lemmaId == null ? -1 : lemmaId;
+    }
+
+    /**
+     * Проверяет, что символ входит в слово (буква или цифра).
+     *
+     * @param c символ
+     * @return true для букв и цифр
+     */
+    static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * Находит конец слова, начинающегося с позиции {@code start}.
+     *
+     * @param text {@link CharSequence} текст
+     * @param start начало слова
+     * @param limit граница поиска
+     * @return позиция первого символа после слова
+     */
+    static int wordEnd(CharSequence text, int start, int limit) {
+        int end = start + 1;
+        while (end < limit && isWordChar(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Добавляет символ с экранированием HTML.
+     *
+     * @param out {@link StringBuilder} результат
+     * @param c символ
+     */
+    private static void appendEscaped(StringBuilder out, char c) {
+        switch (c) {
+            case '&' -> out.append("&amp;");
+            case '<' -> out.append("&lt;");
+            case '>' -> out.append("&gt;");
+            case '"' -> out.append("&quot;");
+            default -> out.append(c);
+        }
+    }
+
+    /**
+     * Узел префиксного дерева токенов запроса; переходы хранятся в небольших массивах.
+     */
+    private static final class Node {
+
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private int id = -1;
+
+        /**
+         * Добавляет токен в дерево.
+         *
+         * @param term {@link String} токен в нижнем регистре
+         * @param termId номер слова запроса
+         */
+        private void add(String term, int termId) {
+            Node node = this;
+            for (int i = 0; i < term.length(); i++) {
+                char c = term.charAt(i);
+                Node next = node.child(c);
+                if (next == null) {
+                    next = new Node();
+                    int size = node.labels.length;
+                    node.labels = Arrays.copyOf(node.labels, size + 1);
+                    node.children = Arrays.copyOf(node.children, size + 1);
+                    node.labels[size] = c;
+                    node.children[size] = next;
+                }
+                node = next;
+            }
+            if (node.id < 0) {
+                node.id = termId;
+            }
+        }
+
+        /**
+         * Ищет слово текста (без учёта регистра) среди токенов дерева.
+         *
+         * @param text {@link CharSequence} текст
+         * @param start начало слова
+         * @param end конец слова (не включая)
+         * @return номер слова запроса или {@code -1}, если слово не найдено
+         */
+        private int find(CharSequence text, int start, int end) {
+            Node node = this;
+            for (int i = start; i < end && node != null; i++) {
+                node = node.child(Character.toLowerCase(text.charAt(i)));
+            }
+            return node == null ? -1 : node.id;
+        }
+
+        /**
+         * Возвращает дочерний узел по символу.
+         *
+         * @param c символ
+         * @return {@link Node} узел или {@code null}
+         */
+        private Node child(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package searchengine.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SearchConfig;
+import searchengine.model.entity.Site;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Параллельный поиск по нескольким сайтам с общим сроком выполнения запроса.
+ *
+ * <p>Каждый сайт обрабатывается в отдельной задаче выделенного пула ({@code search-settings.parallelism} потоков,
+ * очередь {@code search-settings.queue-capacity}) со своим {@link TopKCollector}; частичные отборы объединяются.
+ * Сайты, не успевшие к сроку {@code search-settings.timeout-ms}, отменяются и не попадают в выдачу, чтобы медленный
+ * или большой сайт не задерживал ответ. При переполнении очереди задача выполняется в потоке запроса.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Service
+@Slf4j
+public class SearchFanOutExecutor {
+
+    private final SearchConfig searchConfig;
+    private final SearchIndexEngine searchIndexEngine;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Создаёт исполнитель и пул потоков поиска.
+     *
+     * @param searchConfig {@link SearchConfig} настройки поиска
+     * @param searchIndexEngine {@link SearchIndexEngine} движок поиска по сайту
+     * @param transactionTemplate {@link TransactionTemplate} шаблон транзакций (для потоков пула)
+     */
+    public SearchFanOutExecutor(SearchConfig searchConfig, SearchIndexEngine searchIndexEngine,
+                                TransactionTemplate transactionTemplate) {
+        this.searchConfig = searchConfig;
+        this.searchIndexEngine = searchIndexEngine;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        int threads = Math.max(1, searchConfig.getParallelism());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, searchConfig.getQueueCapacity())), runnable -> {
+            Thread thread = new Thread(runnable, "search-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Ищет страницы на сайтах и объединяет результаты в один отбор.
+     *
+     * @param sites {@link List}<{@link Site}> сайты для поиска
+     * @param lemmaTexts {@link Collection}<{@link String}> тексты лемм запроса
+     * @param capacity количество отбираемых страниц ({@code offset + limit})
+     * @return {@link TopKCollector} объединённый отбор по сайтам, успевшим к сроку
+     */
+    public TopKCollector search(List<Site> sites, Collection<String> lemmaTexts, int capacity) {
+        TopKCollector merged = new TopKCollector(capacity);
+        if (sites.size() == 1) {
+            searchIndexEngine.collectHits(sites.get(0), lemmaTexts, merged);
+            return merged;
+        }
+        List<Future<TopKCollector>> futures = new ArrayList<>(sites.size());
+        for (Site site : sites) {
+            futures.add(executor.submit(() -> searchSite(site, lemmaTexts, capacity)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(searchConfig.getTimeoutMs());
+        for (int i = 0; i < futures.size(); i++) {
+            Future<TopKCollector> future = futures.get(i);
+            Site site = sites.get(i);
+            try {
+                merged.addAll(future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                merged.markIncomplete();
+                log.warn("Поиск по сайту {} не уложился в {} мс, сайт пропущен", site.getUrl(),
+                        searchConfig.getTimeoutMs());
+            } catch (ExecutionException e) {
+                merged.markIncomplete();
+                log.error("Ошибка поиска по сайту {}: {}", site.getUrl(), e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                merged.markIncomplete();
+                break;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Останавливает пул потоков поиска при завершении приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Ищет страницы одного сайта в отдельной транзакции только для чтения.
+     *
+     * @param site {@link Site} сайт
+     * @param lemmaTexts {@link Collection}<{@link String}> тексты лемм запроса
+     * @param capacity количество отбираемых страниц
+     * @return {@link TopKCollector} частичный отбор по сайту
+     */
+    private TopKCollector searchSite(Site site, Collection<String> lemmaTexts, int capacity) {
+        long started = System.nanoTime();
+        TopKCollector collector = new TopKCollector(capacity);
+        readOnlyTransaction.executeWithoutResult(status -> searchIndexEngine.collectHits(site, lemmaTexts, collector));
+        log.debug("Поиск по сайту {}: {} страниц за {} мс", site.getUrl(), collector.count(),
+                (System.nanoTime() - started) / 1_000_000);
+        return collector;
+    }
+}
@@ -0,0 +1,12 @@
+package searchengine.service;
+
+/**
+ * Внутреннее представление результата поиска (для сортировки/пагинации).
+ *
+ * @param siteId ID сайта
+ * @param pageId ID страницы
+ * @param absRelevance абсолютная релевантность (сумма rank)
+ * @author Tseliar Vladimir
+ */
+public record SearchHit(int siteId, int pageId, double absRelevance) {
+}
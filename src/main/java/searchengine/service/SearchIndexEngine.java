@@ -0,0 +1,31 @@
+package searchengine.service;
+
+import searchengine.model.entity.Site;
+
+import java.util.Collection;
+
+/**
+ * Движок поиска страниц сайта, содержащих все леммы запроса.
+ *
+ * @author Tseliar Vladimir
+ */
+public interface SearchIndexEngine {
+
+    /**
+     * Доля страниц сайта, начиная с которой лемма считается слишком частой и не участвует в поиске.
+     */
+    double MAX_FREQUENCY_RATIO = 0.8d;
+
+    /**
+     * Передаёт в {@link TopKCollector} страницы сайта, содержащие все леммы запроса, с абсолютной релевантностью.
+     *
+     * <p>Если хотя бы одной леммы нет в индексе сайта, ничего не передаётся.
+     * Слишком частые леммы (см. {@link #MAX_FREQUENCY_RATIO}) отбрасываются. Страницы передаются по мере
+     * нахождения, без накопления списка.</p>
+     *
+     * @param site {@link Site} сайт
+     * @param lemmaTexts {@link Collection}<{@link String}> тексты лемм запроса
+     * @param collector {@link TopKCollector} отбор лучших страниц
+     */
+    void collectHits(Site site, Collection<String> lemmaTexts, TopKCollector collector);
+}
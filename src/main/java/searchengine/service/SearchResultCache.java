@@ -0,0 +1,235 @@
+package searchengine.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш ранжированных результатов поиска с вытеснением LRU и ограничением по памяти.
+ *
+ * <p>Ключ — набор сайтов и отсортированный набор лемм запроса, поэтому запросы, различающиеся только формой слов
+ * или порядком, используют одну запись. Запись хранит до {@code search-settings.cache.depth} лучших страниц
+ * в примитивных массивах, общее количество найденных страниц и номера поколений индекса сайтов
+ * ({@link IndexGenerations}) на момент вычисления. Запись с устаревшим поколением удаляется при обращении.
+ * Страницы выдачи ({@code offset}/{@code limit}) в пределах сохранённой глубины отдаются без обращения к БД.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Component
+@RequiredArgsConstructor
+public class SearchResultCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int BYTES_PER_HIT = 16;
+
+    private final SearchConfig searchConfig;
+    private final IndexGenerations indexGenerations;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long weightBytes;
+
+    /**
+     * Возвращает признак, что кэш включён ({@code search-settings.cache.max-bytes > 0}).
+     *
+     * @return true, если кэш включён
+     */
+    public boolean isEnabled() {
+        return searchConfig.getCache().getMaxBytes() > 0;
+    }
+
+    /**
+     * Строит ключ кэша по сайтам и леммам запроса.
+     *
+     * @param siteIds {@link List}<{@link Integer}> ID сайтов, по которым выполняется поиск
+     * @param lemmaTexts {@link Collection}<{@link String}> тексты лемм запроса
+     * @return {@link String} ключ
+     */
+    public static String key(List<Integer> siteIds, Collection<String> lemmaTexts) {
+        int[] sites = siteIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+        String[] lemmas = lemmaTexts.toArray(new String[0]);
+        Arrays.sort(lemmas);
+        return Arrays.toString(sites) + String.join(" ", lemmas);
+    }
+
+    /**
+     * Возвращает ранжированные результаты из кэша, если запись актуальна и содержит нужное количество страниц.
+     *
+     * @param key {@link String} ключ (см. {@link #key(List, Collection)})
+     * @param required количество страниц, нужное для ответа ({@code offset + limit})
+     * @return {@link RankedHits} результаты или {@code null}, если их нужно вычислить
+     */
+    public RankedHits get(String key, int required) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && !isCurrent(entry)) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null || !entry.hits().covers(required)) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.hits();
+        }
+    }
+
+    /**
+     * Сохраняет ранжированные результаты, вытесняя давно не использованные записи при превышении лимитов.
+     *
+     * @param key {@link String} ключ
+     * @param siteIds {@link List}<{@link Integer}> ID сайтов, по которым выполнялся поиск
+     * @param generations {@code long[]} номера поколений сайтов, снятые до начала поиска
+     * @param ranked {@link RankedHits} результаты
+     */
+    public void put(String key, List<Integer> siteIds, long[] generations, RankedHits ranked) {
+        if (!isEnabled()) {
+            return;
+        }
+        long weight = ENTRY_OVERHEAD_BYTES + 2L * key.length() + (long) BYTES_PER_HIT * ranked.size();
+        SearchConfig.CacheConfig config = searchConfig.getCache();
+        if (weight > config.getMaxBytes()) {
+            return;
+        }
+        int[] sites = siteIds.stream().mapToInt(Integer::intValue).toArray();
+        synchronized (this) {
+            remove(key);
+            entries.put(key, new Entry(sites, generations, ranked, weight));
+            weightBytes += weight;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while ((weightBytes > config.getMaxBytes() || entries.size() > config.getMaxEntries()) && eldest.hasNext()) {
+                weightBytes -= eldest.next().getValue().weight();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Возвращает краткую сводку по кэшу для записи в лог.
+     *
+     * @return {@link String} сводка
+     */
+    public synchronized String summary() {
+        return String.format("записей %d, %d КБ, попаданий %d, промахов %d",
+                entries.size(), weightBytes / 1024, hits.sum(), misses.sum());
+    }
+
+    /**
+     * Проверяет, что поколения всех сайтов записи не изменились.
+     *
+     * @param entry {@link Entry} запись
+     * @return true, если запись актуальна
+     */
+    private boolean isCurrent(Entry entry) {
+        for (int i = 0; i < entry.siteIds().length; i++) {
+            if (indexGenerations.current(entry.siteIds()[i]) != entry.generations()[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Удаляет запись и уменьшает занятый объём (вызывается под блокировкой кэша).
+     *
+     * @param key {@link String} ключ
+     */
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weightBytes -= removed.weight();
+        }
+    }
+
+    /**
+     * Запись кэша.
+     *
+     * @param siteIds ID сайтов
+     * @param generations номера поколений сайтов на момент вычисления
+     * @param hits ранжированные результаты
+     * @param weight оценка занимаемой памяти в байтах
+     */
+    private record Entry(int[] siteIds, long[] generations, RankedHits hits, long weight) {
+    }
+
+    /**
+     * Ранжированные результаты поиска: лучшие страницы в порядке выдачи, общее количество и максимальная релевантность.
+     *
+     * @param siteIds ID сайтов страниц
+     * @param pageIds ID страниц
+     * @param absRelevance абсолютная релевантность страниц
+     * @param count общее количество найденных страниц
+     * @param maxAbsRelevance максимальная абсолютная релевантность
+     */
+    public record RankedHits(int[] siteIds, int[] pageIds, double[] absRelevance, int count, double maxAbsRelevance) {
+
+        /**
+         * Создаёт результаты из отбора лучших страниц.
+         *
+         * @param collector {@link TopKCollector} отбор
+         * @return {@link RankedHits} результаты
+         */
+        public static RankedHits of(TopKCollector collector) {
+            List<SearchHit> top = collector.results();
+            int[] sites = new int[top.size()];
+            int[] pages = new int[top.size()];
+            double[] abs = new double[top.size()];
+            for (int i = 0; i < top.size(); i++) {
+                SearchHit hit = top.get(i);
+                sites[i] = hit.siteId();
+                pages[i] = hit.pageId();
+                abs[i] = hit.absRelevance();
+            }
+            return new RankedHits(sites, pages, abs, collector.count(), collector.maxAbsRelevance());
+        }
+
+        /**
+         * Возвращает количество сохранённых страниц.
+         *
+         * @return количество страниц
+         */
+        public int size() {
+            return pageIds.length;
+        }
+
+        /**
+         * Проверяет, хватает ли сохранённых страниц для ответа.
+         *
+         * @param required нужное количество страниц ({@code offset + limit})
+         * @return true, если сохранено не меньше нужного или сохранены все найденные страницы
+         */
+        public boolean covers(int required) {
+            return size() >= required || size() == count;
+        }
+
+        /**
+         * Возвращает страницы выдачи с позиции {@code from} до {@code to} (не включая).
+         *
+         * @param from начальная позиция
+         * @param to конечная позиция
+         * @return {@link List}<{@link SearchHit}> страницы выдачи
+         */
+        public List<SearchHit> slice(int from, int to) {
+            int end = Math.min(to, size());
+            List<SearchHit> result = new ArrayList<>(Math.max(0, end - from));
+            for (int i = from; i < end; i++) {
+                result.add(new SearchHit(siteIds[i], pageIds[i], absRelevance[i]));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package searchengine.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Сайты, для которых сейчас идёт переиндексация в теневое поколение
+ * ({@link searchengine.model.enums.ReindexMode#SHADOW}).
+ *
+ * <p>Пока идёт такой обход, текущее поколение сайта после переключения будет удалено, поэтому
+ * {@link PageIndexingService} не записывает в него отдельные страницы.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Component
+public class ShadowReindexes {
+
+    private final Set<String> siteUrls = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Отмечает начало переиндексации сайта в теневое поколение.
+     *
+     * @param siteUrl {@link String} URL сайта из конфигурации
+     */
+    public void begin(String siteUrl) {
+        siteUrls.add(siteUrl);
+    }
+
+    /**
+     * Отмечает завершение переиндексации сайта (после переключения или удаления теневого поколения).
+     *
+     * @param siteUrl {@link String} URL сайта из конфигурации
+     */
+    public void end(String siteUrl) {
+        siteUrls.remove(siteUrl);
+    }
+
+    /**
+     * Проверяет, идёт ли переиндексация сайта в теневое поколение.
+     *
+     * @param siteUrl {@link String} URL сайта из конфигурации
+     * @return true, если переиндексация идёт
+     */
+    public boolean isActive(String siteUrl) {
+        return siteUrls.contains(siteUrl);
+    }
+}
@@ -2,141 +2,245 @@ package searchengine.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.UnsupportedMimeTypeException;
 import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.util.StringUtils;
-import searchengine.config.IndexingConfig;
+import searchengine.model.dto.indexing.PageState;
 import searchengine.model.entity.Page;
 import searchengine.model.entity.Site;
+import searchengine.model.enums.LemmaWriteMode;
 import searchengine.model.enums.SiteStatus;
-import searchengine.repository.IndexSearchRepository;
-import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 
 import java.net.URI;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Задача ForkJoin: обходит одну страницу, сохраняет её и планирует обход дочерних ссылок.
+ * Обработка страниц сайта для стадий {@link CrawlPipeline}: разбор загруженной {@link PageFetcher} страницы
+ * с постановкой найденных ссылок в {@link CrawlFrontier}, лемматизация и сохранение страницы с леммами.
+ *
+ * <p>При повторном обходе ({@link searchengine.model.enums.ReindexMode#INCREMENTAL}) задано сохранённое состояние
+ * страниц сайта: страницы, вернувшие 304 или тело с тем же хэшем, не лемматизируются и не записываются — из них
+ * только извлекаются ссылки (для 304 — из сохранённого HTML-кода). Сохранённая страница, которая теперь отвечает
+ * кодом 400 и выше, удаляется вместе с её леммами; страницы, на которые обход не нашёл ссылок, удаляются после
+ * обхода ({@link #removeUnreachedPages(boolean)}).</p>
+ *
+ * <p>Один экземпляр на сайт; методы потокобезопасны и вызываются из пулов соответствующих стадий.</p>
  * 
  * @author Tseliar Vladimir
  */
 @Slf4j
 @RequiredArgsConstructor
-public class SiteIndexingTask extends RecursiveAction {
+public class SiteIndexingTask {
 
     private final Site site;
-    private final String url;
-    private final Set<String> visited;
+    private final CrawlFrontier frontier;
     private final PageRepository pageRepository;
     private final SiteRepository siteRepository;
-    private final IndexingConfig config;
     private final IndexingService indexingService;
-    private final LemmaFinder lemmaFinder;
-    private final LemmaRepository lemmaRepository;
-    private final IndexSearchRepository indexRepository;
+    private final DocumentProcessor documentProcessor;
     private final LemmaIndexingService lemmaIndexingService;
+    private final SiteLemmaBuffer lemmaBuffer;
+    private final IndexingMetrics indexingMetrics;
+    private final PageContentStore pageContentStore;
+    private final PageIndexingService pageIndexingService;
+    private final Map<String, PageState> knownPages;
+
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder changed = new LongAdder();
+    private final LongAdder added = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final Set<String> seenPaths = ConcurrentHashMap.newKeySet();
+    private final LongAdder downloadedBytes = new LongAdder();
 
     /**
-     * Выполняет обход текущего URL и планирует задачи для найденных ссылок.
+     * Разбирает загруженную страницу и ставит в очередь найденные ссылки (стадия разбора).
+     *
+     * @param next {@link CrawlFrontier.CrawlUrl} URL из очереди обхода
+     * @param fetched {@link PageFetcher.FetchedPage} ответ сервера
+     * @return {@link DocumentProcessor.ParsedDocument} разобранная страница или {@code null}, если страницу
+     * сохранять не нужно
      */
-    @Override
-    protected void compute() {
-        if (indexingService.isStopRequested() || !visited.add(url)) {
-            return;
+    public DocumentProcessor.ParsedDocument parse(CrawlFrontier.CrawlUrl next, PageFetcher.FetchedPage fetched) {
+        String url = next.url();
+        if (indexingService.isStopRequested()) {
+            return null;
         }
-        try {
-            try {
-                Thread.sleep(ThreadLocalRandom.current().nextInt(100, 500));
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                return;
+        PageState known = knownState(url);
+        if (known != null) {
+            seenPaths.add(known.path());
+        }
+        if (fetched.statusCode() == 304 && known != null) {
+            notModified.increment();
+            offerLinks(next, documentProcessor.parse(pageContentStore.loadHtml(known.id()), fetched.url()));
+            return null;
+        }
+        if (fetched.statusCode() >= 400) {
+            log.debug("Пропускаем страницу с кодом {}: {}", fetched.statusCode(), url);
+            if (known != null) {
+                removePage(known);
             }
-            Connection.Response response = Jsoup.connect(url)
-                    .userAgent(config.getUserAgent())
-                    .referrer(config.getReferrer())
-                    .timeout(10000)
-                    .followRedirects(true)
-                    .ignoreHttpErrors(true)
-                    .execute();
+            return null;
+        }
+        if (!PageFetcher.isText(fetched.contentType()) || fetched.body() == null) {
+            log.debug("Пропускаем не-текстовый контент ({}): {}", fetched.contentType(), url);
+            return null;
+        }
+        downloadedBytes.add(fetched.body().length);
+        DocumentProcessor.ParsedDocument document =
+                documentProcessor.parse(fetched.body(), fetched.charset(), fetched.url());
+        offerLinks(next, document);
+        if (known != null && known.contentHash() != null
+                && known.contentHash().equals(PageFetcher.contentHash(fetched.body()))) {
+            unchanged.increment();
+            return null;
+        }
+        return document;
+    }
+
+    /**
+     * Возвращает сохранённое состояние страницы при повторном обходе сайта.
+     *
+     * @param url {@link String} URL страницы
+     * @return {@link PageState} состояние страницы или {@code null}, если страница новая или обход полный
+     */
+    public PageState knownState(String url) {
+        return knownPages == null ? null : knownPages.get(pathOf(url));
+    }
 
-            int statusCode = response.statusCode();
-            if (statusCode >= 400) {
-                log.debug("Пропускаем страницу с кодом {}: {}", statusCode, url);
+    /**
+     * Возвращает сводку повторного обхода для записи в лог.
+     *
+     * @return {@link String} сводка
+     */
+    public String recrawlSummary() {
+        return String.format("не изменились: %d (304), %d (тот же хэш); изменились %d, новые %d, удалены %d; "
+                        + "загружено %d КБ", notModified.sum(), unchanged.sum(), changed.sum(), added.sum(),
+                removed.sum(), downloadedBytes.sum() / 1024);
+    }
+
+    /**
+     * Удаляет сохранённые страницы, на которые обход не нашёл ни одной ссылки и которые не загружал: их больше
+     * нет на сайте.
+     *
+     * <p>Пути сохранённых страниц, на которые встретилась ссылка, запоминаются точно, без фильтра посещённых URL
+     * очереди обхода, поэтому ложное срабатывание фильтра не приводит к удалению страницы. Если обход не прошёл
+     * до конца (остановлен или не дождался завершения запросов) или очередь обхода отбрасывала ссылки по лимитам,
+     * страницы не удаляются: часть из них могла остаться на сайте.</p>
+     *
+     * @param drained true, если конвейер обхода прошёл до конца ({@link CrawlPipeline#run()})
+     */
+    public void removeUnreachedPages(boolean drained) {
+        if (knownPages == null || indexingService.isStopRequested()) {
+            return;
+        }
+        if (!drained || frontier.isTruncated()) {
+            log.info("Обход сайта {} прошёл не полностью, недостижимые страницы не удаляются", site.getUrl());
+            return;
+        }
+        for (PageState known : knownPages.values()) {
+            if (indexingService.isStopRequested()) {
                 return;
             }
-            String contentType = response.contentType();
-            if (contentType == null || !(contentType.startsWith("text/") || contentType.contains("xml"))) {
-                log.debug("Пропускаем не-текстовый контент ({}): {}", contentType, url);
-                return;
+            if (!seenPaths.contains(known.path())) {
+                removePage(known);
             }
+        }
+    }
 
-            Document doc = response.parse();
-            savePage(doc.html(), response.statusCode());
-            updateStatusTime();
-            if (!indexingService.isStopRequested()) {
-                List<SiteIndexingTask> tasks = new ArrayList<>();
-                for (Element link : doc.select("a[href]")) {
-                    String absUrl = link.attr("abs:href");
-                    if (isValid(absUrl)) {
-                        tasks.add(new SiteIndexingTask(site, absUrl, visited, pageRepository, siteRepository, config,
-                                indexingService, lemmaFinder, lemmaRepository, indexRepository, lemmaIndexingService));
-                    }
-                }
-                if (!tasks.isEmpty()) {
-                    invokeAll(tasks);
-                }
-            }
-        } catch (UnsupportedMimeTypeException e) {
-            log.debug("Пропускаем неподдерживаемый content-type: {} ({})", e.getMimeType(), url);
+    /**
+     * Собирает леммы из текста разобранной страницы (стадия лемматизации). Ошибка лемматизации не мешает
+     * сохранить саму страницу.
+     *
+     * @param url {@link String} URL страницы
+     * @param document {@link DocumentProcessor.ParsedDocument} разобранная страница
+     * @return {@link Map}<{@link String}, {@link Integer}> карта {@code лемма -> количество}
+     */
+    public Map<String, Integer> lemmatize(String url, DocumentProcessor.ParsedDocument document) {
+        try {
+            return documentProcessor.lemmatize(document);
         } catch (Exception e) {
-            if (Thread.currentThread().isInterrupted() || indexingService.isStopRequested()) {
-                return;
+            log.error("Ошибка при сборе лемм для страницы {}: {}", url, e.getMessage(), e);
+            return Map.of();
+        }
+    }
+
+    /**
+     * Сохраняет страницу с леммами и обновляет время статуса сайта (стадия записи в БД).
+     *
+     * @param url {@link String} URL страницы
+     * @param document {@link DocumentProcessor.ParsedDocument} разобранная страница
+     * @param fetched {@link PageFetcher.FetchedPage} ответ сервера
+     * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> леммы страницы
+     */
+    public void persist(String url, DocumentProcessor.ParsedDocument document, PageFetcher.FetchedPage fetched,
+                        Map<String, Integer> lemmaCounts) {
+        savePage(url, document, fetched, lemmaCounts);
+        updateStatusTime();
+    }
+
+    /**
+     * Обрабатывает ошибку загрузки или разбора страницы: отмечает сайт как {@link SiteStatus#FAILED}.
+     * При повторном обходе статус не меняется, поскольку поиск по сайту продолжает работать.
+     *
+     * @param next {@link CrawlFrontier.CrawlUrl} URL из очереди обхода
+     * @param error {@link Throwable} ошибка
+     */
+    public void fail(CrawlFrontier.CrawlUrl next, Throwable error) {
+        if (Thread.currentThread().isInterrupted() || indexingService.isStopRequested()) {
+            return;
+        }
+        log.error("Ошибка при обработке страницы {}: {}", next.url(), error.getMessage(), error);
+        if (knownPages != null) {
+            PageState known = knownState(next.url());
+            if (known != null) {
+                seenPaths.add(known.path());
             }
-            log.error("Ошибка при обработке страницы {}: {}", url, e.getMessage(), e);
-            try {
-                Site currentSite = siteRepository.findById(site.getId()).orElse(null);
-                if (currentSite != null) {
-                    currentSite.setStatus(SiteStatus.FAILED);
-                    currentSite.setLastError("Ошибка при обработке страницы: " + e.getMessage());
-                    currentSite.setStatusTime(LocalDateTime.now());
-                    siteRepository.save(currentSite);
-                }
-            } catch (Exception siteUpdateError) {
-                log.debug("Не удалось обновить статус сайта (возможно, он был удален): {}", siteUpdateError.getMessage());
+            return;
+        }
+        try {
+            Site currentSite = siteRepository.findById(site.getId()).orElse(null);
+            if (currentSite != null) {
+                currentSite.setStatus(SiteStatus.FAILED);
+                currentSite.setLastError("Ошибка при обработке страницы: " + error.getMessage());
+                currentSite.setStatusTime(LocalDateTime.now());
+                siteRepository.save(currentSite);
             }
+        } catch (Exception siteUpdateError) {
+            log.debug("Не удалось обновить статус сайта (возможно, он был удален): {}", siteUpdateError.getMessage());
         }
     }
 
     /**
      * Сохраняет страницу и запускает сохранение лемм/индекса.
      *
-     * @param content {@link String} HTML-код страницы
-     * @param code HTTP-код ответа
+     * <p>Если задан буфер лемм сайта (режим {@link LemmaWriteMode#BULK}), леммы страницы
+     * добавляются в буфер и записываются в БД пакетом при достижении порога.</p>
+     *
+     * <p>При повторном обходе изменившаяся страница обновляется на месте
+     * ({@link PageIndexingService#updatePage(Page, String, Map)}): к леммам и индексу применяется только разница
+     * с сохранённой версией.</p>
+     *
+     * @param url {@link String} URL страницы
+     * @param document {@link DocumentProcessor.ParsedDocument} разобранная страница
+     * @param fetched {@link PageFetcher.FetchedPage} ответ сервера
+     * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> леммы страницы
      */
-    private void savePage(String content, int code) {
+    private void savePage(String url, DocumentProcessor.ParsedDocument document, PageFetcher.FetchedPage fetched,
+                          Map<String, Integer> lemmaCounts) {
         try {
             if (indexingService.isStopRequested()) {
                 log.debug("Остановка индексации запрошена, пропускаем сохранение страницы: {}", url);
                 return;
             }
             
-            URI uri = URI.create(url);
-            String path = uri.getPath();
-            if (!StringUtils.hasText(path)) {
-                path = "/";
-            }
+            String path = pathOf(url);
             Site currentSite = siteRepository.findById(site.getId()).orElse(null);
             
             if (currentSite == null) {
@@ -148,22 +252,38 @@ public class SiteIndexingTask extends RecursiveAction {
                 return;
             }
             
+            Page version = Page.builder()
+                    .site(currentSite)
+                    .path(path)
+                    .code(fetched.statusCode())
+                    .title(document.title())
+                    .text(document.text())
+                    .etag(PageFetcher.validator(fetched.etag(), 255))
+                    .lastModified(PageFetcher.validator(fetched.lastModified(), 64))
+                    .contentHash(PageFetcher.contentHash(fetched.body()))
+                    .build();
+            PageState known = knownState(url);
+            if (known != null) {
+                version.setId(known.id());
+                pageIndexingService.updatePage(version, document.html(), lemmaCounts);
+                changed.increment();
+                log.debug("Обновлена страница: {} для сайта: {}", path, currentSite.getUrl());
+                return;
+            }
             if (pageRepository.existsBySiteAndPath(currentSite, path)) {
                 return;
             }
+            added.increment();
             
-            Page page = pageRepository.save(
-                    Page.builder()
-                            .site(currentSite)
-                            .path(path)
-                            .code(code)
-                            .content(content)
-                            .build()
-            );
+            Page page = pageContentStore.save(version, document.html());
             
             try {
-                Map<String, Integer> lemmaCounts = lemmaFinder.collectLemmas(content);
-                if (lemmaCounts != null && !lemmaCounts.isEmpty()) {
+                if (lemmaCounts != null && !lemmaCounts.isEmpty() && lemmaBuffer != null) {
+                    if (lemmaBuffer.add(page.getId(), lemmaCounts)) {
+                        lemmaIndexingService.flushBuffer(currentSite, lemmaBuffer, false);
+                    }
+                    log.debug("Сохранена страница: {} для сайта: {} (лемм в буфере: {})", path, currentSite.getUrl(), lemmaCounts.size());
+                } else if (lemmaCounts != null && !lemmaCounts.isEmpty()) {
                     saveLemmasWithRetry(page, lemmaCounts, currentSite);
                     log.debug("Сохранена страница: {} для сайта: {} (лемм: {})", path, currentSite.getUrl(), lemmaCounts.size());
                 } else {
@@ -198,6 +318,7 @@ public class SiteIndexingTask extends RecursiveAction {
                 if (attempt++ >= 5) {
                     throw e;
                 }
+                indexingMetrics.recordLockRetry();
                 try {
                     Thread.sleep(100L * attempt + ThreadLocalRandom.current().nextInt(0, 150));
                 } catch (InterruptedException ie) {
@@ -208,6 +329,27 @@ public class SiteIndexingTask extends RecursiveAction {
         }
     }
 
+    /**
+     * Удаляет сохранённую страницу, которой больше нет на сайте, вместе с её HTML-кодом и леммами.
+     *
+     * @param known {@link PageState} состояние сохранённой страницы
+     */
+    private void removePage(PageState known) {
+        Page page = Page.builder()
+                .site(site)
+                .path(known.path())
+                .build();
+        page.setId(known.id());
+        try {
+            pageIndexingService.deletePage(page);
+            knownPages.remove(known.path());
+            removed.increment();
+            log.debug("Удалена страница: {} для сайта: {}", known.path(), site.getUrl());
+        } catch (Exception e) {
+            log.error("Ошибка при удалении страницы {}{}: {}", site.getUrl(), known.path(), e.getMessage(), e);
+        }
+    }
+
     /**
      * Обновляет поле {@link Site#getStatusTime()} для текущего сайта.
      */
@@ -223,6 +365,51 @@ public class SiteIndexingTask extends RecursiveAction {
         }
     }
 
+    /**
+     * Ставит в очередь обхода ссылки разобранной страницы.
+     *
+     * @param next {@link CrawlFrontier.CrawlUrl} URL страницы
+     * @param document {@link DocumentProcessor.ParsedDocument} разобранная страница
+     */
+    private void offerLinks(CrawlFrontier.CrawlUrl next, DocumentProcessor.ParsedDocument document) {
+        for (String link : document.links()) {
+            if (isValid(link)) {
+                markSeen(link);
+                frontier.offer(link, next.depth() + 1);
+            }
+        }
+    }
+
+    /**
+     * Запоминает путь сохранённой страницы, на которую встретилась ссылка (при повторном обходе).
+     *
+     * @param link {@link String} абсолютный URL ссылки
+     */
+    private void markSeen(String link) {
+        if (knownPages == null) {
+            return;
+        }
+        try {
+            PageState known = knownState(link);
+            if (known != null) {
+                seenPaths.add(known.path());
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Некорректная ссылка {}: {}", link, e.getMessage());
+        }
+    }
+
+    /**
+     * Возвращает путь страницы, под которым она хранится в БД.
+     *
+     * @param url {@link String} URL страницы
+     * @return {@link String} путь ({@code /} для корня сайта)
+     */
+    private static String pathOf(String url) {
+        String path = URI.create(url).getPath();
+        return StringUtils.hasText(path) ? path : "/";
+    }
+
     /**
      * Проверяет, нужно ли обходить ссылку.
      *
@@ -0,0 +1,137 @@
+package searchengine.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Буфер лемм сайта для режима {@link searchengine.model.enums.LemmaWriteMode#BULK}.
+ *
+ * <p>Потоки обхода добавляют в буфер леммы сохранённых страниц: frequency лемм накапливается в общей карте
+ * по тексту леммы, вхождения страниц складываются в очередь. Когда количество вхождений достигает порога
+ * или обход завершён, содержимое буфера забирается {@link #drain()} и записывается в БД
+ * ({@link LemmaIndexingService#flushBuffer(searchengine.model.entity.Site, SiteLemmaBuffer, boolean)}).</p>
+ *
+ * @author Tseliar Vladimir
+ */
+public class SiteLemmaBuffer {
+
+    private final long flushThreshold;
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicLong bufferedPostings = new AtomicLong();
+
+    private ConcurrentHashMap<String, Integer> frequencies = new ConcurrentHashMap<>();
+    private ConcurrentLinkedQueue<PagePostings> postings = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Создаёт пустой буфер.
+     *
+     * @param flushThreshold количество вхождений, при котором буфер нужно записать в БД
+     */
+    public SiteLemmaBuffer(long flushThreshold) {
+        this.flushThreshold = flushThreshold;
+    }
+
+    /**
+     * Добавляет леммы страницы в буфер.
+     *
+     * @param pageId ID страницы
+     * @param lemmaCounts {@link Map}<{@link String}, {@link Integer}> карта {@code лемма -> количество} для страницы
+     * @return true, если после добавления буфер достиг порога и его нужно записать в БД
+     */
+    public boolean add(int pageId, Map<String, Integer> lemmaCounts) {
+        String[] lemmas = new String[lemmaCounts.size()];
+        float[] ranks = new float[lemmaCounts.size()];
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : lemmaCounts.entrySet()) {
+            String lemma = entry.getKey();
+            if (lemma == null || lemma.isBlank()) {
+                continue;
+            }
+            lemmas[size] = lemma;
+            ranks[size] = entry.getValue();
+            size++;
+        }
+        if (size == 0) {
+            return false;
+        }
+        long total;
+        swapLock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                frequencies.merge(lemmas[i], 1, Integer::sum);
+            }
+            postings.add(new PagePostings(pageId, lemmas, ranks, size));
+            total = bufferedPostings.addAndGet(size);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        return total >= flushThreshold;
+    }
+
+    /**
+     * Забирает всё содержимое буфера, оставляя его пустым. Потоки обхода при этом продолжают писать в новый буфер.
+     *
+     * @return {@link Snapshot} накопленные данные
+     */
+    public Snapshot drain() {
+        Map<String, Integer> drainedFrequencies;
+        List<PagePostings> drainedPostings;
+        swapLock.writeLock().lock();
+        try {
+            drainedFrequencies = frequencies;
+            drainedPostings = new ArrayList<>(postings);
+            frequencies = new ConcurrentHashMap<>();
+            postings = new ConcurrentLinkedQueue<>();
+            bufferedPostings.set(0);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        return new Snapshot(drainedFrequencies, drainedPostings);
+    }
+
+    /**
+     * Возвращает блокировку, которая гарантирует, что буфер сайта записывается в БД только одним потоком.
+     *
+     * @return {@link ReentrantLock} блокировка записи
+     */
+    public ReentrantLock getFlushLock() {
+        return flushLock;
+    }
+
+    /**
+     * Вхождения лемм одной страницы.
+     *
+     * @param pageId ID страницы
+     * @param lemmas тексты лемм
+     * @param ranks rank лемм (в том же порядке)
+     * @param size количество заполненных элементов массивов
+     */
+    public record PagePostings(int pageId, String[] lemmas, float[] ranks, int size) {
+    }
+
+    /**
+     * Содержимое буфера на момент {@link #drain()}.
+     *
+     * @param frequencies {@link Map}<{@link String}, {@link Integer}> прирост frequency по тексту леммы
+     * @param postings {@link List}<{@link PagePostings}> вхождения страниц
+     */
+    public record Snapshot(Map<String, Integer> frequencies, List<PagePostings> postings) {
+
+        /**
+         * Возвращает признак пустого буфера.
+         *
+         * @return true, если записывать нечего
+         */
+        public boolean isEmpty() {
+            return postings.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package searchengine.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.IndexingConfig;
+import searchengine.config.PurgeConfig;
+import searchengine.repository.SitePurgeRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Удаление всех данных сайта ({@code search_index}, {@code page_content}, {@code page}, {@code lemma}, {@code site})
+ * запросами по множеству строк.
+ *
+ * <p>Страницы удаляются порциями по {@code indexing-settings.purge.page-chunk}: для каждой порции ID страниц одним
+ * запросом удаляются их строки индекса, HTML-код и сами страницы. Затем леммы сайта удаляются порциями
+ * по {@code purge.lemma-chunk} строк и запись сайта. Сущности в память не загружаются, каждый запрос фиксируется
+ * отдельно, поэтому блокировки не копятся на весь сайт. Метод нельзя вызывать внутри транзакции.</p>
+ *
+ * <p>После удаления сайт убирается из индекса в памяти и сбрасываются кэшированные результаты поиска.
+ * Длительность и количество удалённых строк пишутся в лог. Поколения сайта, заменённые переиндексацией
+ * ({@link searchengine.model.enums.ReindexMode#SHADOW}), удаляются по одному в фоновом потоке.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SitePurgeService {
+
+    private final SitePurgeRepository purgeRepository;
+    private final IndexingConfig config;
+    private final InMemoryIndex inMemoryIndex;
+    private final IndexGenerations indexGenerations;
+    private final ExecutorService collector = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "site-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Количество строк, удалённых при очистке данных сайта.
+     *
+     * @param sites записей {@code site}
+     * @param indexRows строк {@code search_index}
+     * @param contentRows строк {@code page_content}
+     * @param pages строк {@code page}
+     * @param lemmas строк {@code lemma}
+     * @param millis длительность в миллисекундах
+     */
+    public record Result(int sites, long indexRows, long contentRows, long pages, long lemmas, long millis) {
+    }
+
+    /**
+     * Удаляет данные всех сайтов с указанным URL.
+     *
+     * @param url {@link String} базовый URL сайта
+     * @return {@link Result} количество удалённых строк
+     */
+    public Result purge(String url) {
+        return purgeAll(url, purgeRepository.findSiteIds(url));
+    }
+
+    /**
+     * Удаляет данные всех записей сайта с указанным URL, кроме одной (оставшиеся от прерванных переиндексаций
+     * теневые и заменённые поколения).
+     *
+     * @param url {@link String} базовый URL сайта
+     * @param keepSiteId ID записи, которую нужно сохранить
+     * @return {@link Result} количество удалённых строк
+     */
+    public Result purgeExcept(String url, int keepSiteId) {
+        List<Integer> siteIds = new ArrayList<>(purgeRepository.findSiteIds(url));
+        siteIds.remove(Integer.valueOf(keepSiteId));
+        return purgeAll(url, siteIds);
+    }
+
+    /**
+     * Удаляет данные одного сайта и саму запись сайта.
+     *
+     * @param siteId ID сайта
+     * @return {@link Result} количество удалённых строк
+     */
+    public Result purgeSite(int siteId) {
+        PurgeConfig purge = config.getPurge();
+        int pageChunk = Math.max(1, purge.getPageChunk());
+        int lemmaChunk = Math.max(1, purge.getLemmaChunk());
+        long started = System.nanoTime();
+        long indexRows = 0;
+        long contentRows = 0;
+        long pages = 0;
+        long lemmas = 0;
+
+        int afterId = 0;
+        List<Integer> pageIds;
+        while (!(pageIds = purgeRepository.findPageIds(siteId, afterId, pageChunk)).isEmpty()) {
+            indexRows += purgeRepository.deleteIndexByPages(pageIds);
+            contentRows += purgeRepository.deleteContentByPages(pageIds);
+            pages += purgeRepository.deletePages(pageIds);
+            afterId = pageIds.get(pageIds.size() - 1);
+        }
+        int deleted;
+        while ((deleted = purgeRepository.deleteLemmaChunk(siteId, lemmaChunk)) > 0) {
+            lemmas += deleted;
+        }
+        int sites = purgeRepository.deleteSite(siteId);
+
+        inMemoryIndex.onSiteRemoved(siteId);
+        indexGenerations.bump(siteId);
+        Result result = new Result(sites, indexRows, contentRows, pages, lemmas,
+                (System.nanoTime() - started) / 1_000_000);
+        log.debug("Сайт {} очищен за {} мс: {}", siteId, result.millis(), result);
+        return result;
+    }
+
+    /**
+     * Ставит удаление данных сайта в очередь фонового потока (поколения сайта, которое больше не используется
+     * поиском).
+     *
+     * @param siteId ID сайта
+     */
+    public void purgeInBackground(int siteId) {
+        collector.execute(() -> {
+            try {
+                Result result = purgeSite(siteId);
+                log.info("Поколение сайта {} удалено в фоне за {} мс: строк search_index {}, page_content {}, "
+                                + "page {}, lemma {}", siteId, result.millis(), result.indexRows(),
+                        result.contentRows(), result.pages(), result.lemmas());
+            } catch (Exception e) {
+                log.error("Ошибка фонового удаления поколения сайта {}: {}", siteId, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Останавливает фоновый поток удаления; незавершённые удаления выполнятся при следующей переиндексации.
+     */
+    @PreDestroy
+    public void shutdown() {
+        collector.shutdownNow();
+    }
+
+    /**
+     * Удаляет данные перечисленных записей сайта.
+     *
+     * @param url {@link String} базовый URL сайта
+     * @param siteIds {@link List}<{@link Integer}> ID записей сайта
+     * @return {@link Result} количество удалённых строк
+     */
+    private Result purgeAll(String url, List<Integer> siteIds) {
+        if (siteIds.isEmpty()) {
+            log.debug("Сайт {} не найден в БД, очистка не требуется", url);
+            return new Result(0, 0, 0, 0, 0, 0);
+        }
+        long started = System.nanoTime();
+        long indexRows = 0;
+        long contentRows = 0;
+        long pages = 0;
+        long lemmas = 0;
+        try {
+            for (int siteId : siteIds) {
+                Result result = purgeSite(siteId);
+                indexRows += result.indexRows();
+                contentRows += result.contentRows();
+                pages += result.pages();
+                lemmas += result.lemmas();
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при очистке данных сайта {}: {}", url, e.getMessage(), e);
+            throw new RuntimeException("Не удалось очистить данные сайта: " + url, e);
+        }
+        Result total = new Result(siteIds.size(), indexRows, contentRows, pages, lemmas,
+                (System.nanoTime() - started) / 1_000_000);
+        log.info("Данные сайта {} очищены за {} мс: записей site {}, строк search_index {}, page_content {}, "
+                        + "page {}, lemma {}", url, total.millis(), total.sites(), total.indexRows(),
+                total.contentRows(), total.pages(), total.lemmas());
+        return total;
+    }
+}
@@ -0,0 +1,221 @@
+package searchengine.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import searchengine.config.SearchConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Формирует сниппеты результатов поиска: фрагмент текста страницы, лучше всего покрывающий слова запроса,
+ * и подсветка слов запроса и их словоформ ({@link QueryHighlighter}).
+ *
+ * @author Tseliar Vladimir
+ */
+@Component
+@RequiredArgsConstructor
+public class SnippetBuilder {
+
+    private final LemmaFinder lemmaFinder;
+    private final SearchConfig searchConfig;
+
+    /**
+     * Разбивает запрос на токены для подсветки в сниппете.
+     *
+     * @param query {@link String} запрос
+     * @return {@link List}<{@link String}> список уникальных токенов (в нижнем регистре), отсортированных по длине (убывание)
+     */
+    public static List<String> extractQueryTerms(String query) {
+        String[] raw = query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+");
+        Set<String> unique = new HashSet<>();
+        for (String token : raw) {
+            if (!StringUtils.hasText(token)) {
+                continue;
+            }
+            if (token.length() < 2) {
+                continue;
+            }
+            unique.add(token);
+        }
+        List<String> result = new ArrayList<>(unique);
+        result.sort((a, b) -> Integer.compare(b.length(), a.length()));
+        return result;
+    }
+
+    /**
+     * Подготавливает поиск и подсветку слов запроса; вызывается один раз на поисковый запрос.
+     *
+     * @param queryTerms {@link List}<{@link String}> токены запроса (в нижнем регистре)
+     * @param queryLemmas {@link Set}<{@link String}> леммы запроса (в нижнем регистре)
+     * @return {@link QueryHighlighter} подсветка слов запроса
+     */
+    public QueryHighlighter highlighter(List<String> queryTerms, Set<String> queryLemmas) {
+        return new QueryHighlighter(queryTerms, queryLemmas, lemmaFinder);
+    }
+
+    /**
+     * Формирует сниппет с подсветкой найденных слов запроса из лучшего фрагмента текста страницы.
+     *
+     * <p>Текст просматривается один раз (не дальше {@code search-settings.snippet.max-scan-words} слов), совпадения
+     * со словами запроса запоминаются с позициями и номерами слов запроса. Затем окно длиной
+     * {@code search-settings.snippet.length} символов сдвигается по совпадениям: лучшим считается окно, которое
+     * покрывает больше разных слов запроса, при равенстве — окно с более близко расположенными совпадениями,
+     * затем — более раннее. Если совпадений нет, сниппет берётся с начала текста.</p>
+     *
+     * @param text {@link String} текст страницы (пробельные символы схлопнуты при индексации)
+     * @param highlighter {@link QueryHighlighter} подсветка слов запроса (см. {@link #highlighter(List, Set)})
+     * @return {@link String} сниппет в HTML-формате
+     */
+    public String build(String text, QueryHighlighter highlighter) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        SearchConfig.SnippetConfig config = searchConfig.getSnippet();
+        int maxLength = Math.max(1, config.getLength());
+        int length = text.length();
+
+        Matches matches = collectMatches(text, highlighter, config.getMaxScanWords());
+        int start = 0;
+        int[] passage = matches.bestPassage(highlighter.wordCount(), maxLength);
+        if (passage != null) {
+            int slack = Math.max(0, maxLength - (passage[1] - passage[0]));
+            start = Math.max(0, passage[0] - Math.min(slack / 2, maxLength / 4));
+        }
+        int end = Math.min(length, start + maxLength);
+        if (end - start < maxLength && start > 0) {
+            start = Math.max(0, end - maxLength);
+        }
+
+        int from = start;
+        int to = end;
+        if (from > 0 && QueryHighlighter.isWordChar(text.charAt(from - 1))) {
+            from = QueryHighlighter.wordEnd(text, from, to);
+        }
+        if (to < length && QueryHighlighter.isWordChar(text.charAt(to))) {
+            while (to > from && QueryHighlighter.isWordChar(text.charAt(to - 1))) {
+                to--;
+            }
+        }
+        if (from >= to) {
+            from = start;
+            to = end;
+        }
+        while (from < to && text.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && text.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        String highlighted = highlighter.highlight(text, from, to);
+
+        String prefix = from > 0 ? "... " : "";
+        String suffix = to < length ? " ..." : "";
+        return prefix + highlighted + suffix;
+    }
+
+    /**
+     * Находит совпадения со словами запроса среди первых {@code maxWords} слов текста.
+     *
+     * @param text {@link String} текст страницы
+     * @param highlighter {@link QueryHighlighter} подсветка слов запроса
+     * @param maxWords максимальное количество просматриваемых слов
+     * @return {@link Matches} совпадения в порядке следования в тексте
+     */
+    private static Matches collectMatches(String text, QueryHighlighter highlighter, int maxWords) {
+        Matches matches = new Matches();
+        int length = text.length();
+        int words = 0;
+        int i = 0;
+        while (i < length && words < maxWords) {
+            if (!QueryHighlighter.isWordChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int end = QueryHighlighter.wordEnd(text, i, length);
+            int id = highlighter.matchId(text, i, end);
+            if (id >= 0) {
+                matches.add(i, end, id);
+            }
+            words++;
+            i = end;
+        }
+        return matches;
+    }
+
+    /**
+     * Совпадения со словами запроса: позиции начала и конца слова и номер слова запроса.
+     */
+    private static final class Matches {
+
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int[] ids = new int[16];
+        private int size;
+
+        /**
+         * Добавляет совпадение.
+         *
+         * @param start начало слова
+         * @param end конец слова (не включая)
+         * @param id номер слова запроса
+         */
+        private void add(int start, int end, int id) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            ids[size] = id;
+            size++;
+        }
+
+        /**
+         * Выбирает лучший фрагмент скользящим окном по совпадениям за {@code O(n)}.
+         *
+         * @param wordCount количество разных слов запроса
+         * @param maxLength длина окна в символах
+         * @return {@code int[]} начало первого и конец последнего совпадения фрагмента или {@code null},
+         * если совпадений нет
+         */
+        private int[] bestPassage(int wordCount, int maxLength) {
+            if (size == 0) {
+                return null;
+            }
+            int[] counts = new int[wordCount];
+            int distinct = 0;
+            int bestDistinct = 0;
+            int bestSpan = Integer.MAX_VALUE;
+            int bestFirst = 0;
+            int bestLast = 0;
+            int next = 0;
+            for (int first = 0; first < size; first++) {
+                long limit = (long) starts[first] + maxLength;
+                if (next == first) {
+                    distinct += counts[ids[next]]++ == 0 ? 1 : 0;
+                    next++;
+                }
+                while (next < size && ends[next] <= limit) {
+                    distinct += counts[ids[next]]++ == 0 ? 1 : 0;
+                    next++;
+                }
+                int span = ends[next - 1] - starts[first];
+                if (distinct > bestDistinct || (distinct == bestDistinct && span < bestSpan)) {
+                    bestDistinct = distinct;
+                    bestSpan = span;
+                    bestFirst = first;
+                    bestLast = next - 1;
+                }
+                distinct -= --counts[ids[first]] == 0 ? 1 : 0;
+            }
+            return new int[]{starts[bestFirst], ends[bestLast]};
+        }
+    }
+}
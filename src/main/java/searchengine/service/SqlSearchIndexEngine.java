@@ -0,0 +1,97 @@
+package searchengine.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import searchengine.model.entity.Lemma;
+import searchengine.model.entity.Site;
+import searchengine.repository.IndexSearchRepository;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Движок поиска на основе запроса к таблицам {@code lemma}/{@code search_index} в MySQL.
+ *
+ * @author Tseliar Vladimir
+ */
+@Service
+@RequiredArgsConstructor
+public class SqlSearchIndexEngine implements SearchIndexEngine {
+
+    private final PageRepository pageRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexSearchRepository indexSearchRepository;
+
+    /**
+     * Находит страницы сайта запросом {@link IndexSearchRepository#streamPageAbsRelevance(int, List, int)}.
+     *
+     * <p>Результат запроса читается потоком и сразу передаётся в отбор, поэтому в памяти не накапливается
+     * список всех найденных страниц. Метод нужно вызывать внутри транзакции.</p>
+     *
+     * @param site {@link Site} сайт
+     * @param lemmaTexts {@link Collection}<{@link String}> тексты лемм запроса
+     * @param collector {@link TopKCollector} отбор лучших страниц
+     */
+    @Override
+    public void collectHits(Site site, Collection<String> lemmaTexts, TopKCollector collector) {
+        List<Lemma> lemmas = loadLemmasForSite(site, lemmaTexts);
+        if (lemmas.isEmpty()) {
+            return;
+        }
+
+        long pagesOnSite = pageRepository.countBySite(site);
+        int frequencyThreshold = (int) Math.ceil(pagesOnSite * MAX_FREQUENCY_RATIO);
+        List<Lemma> filtered = filterTooFrequentLemmas(lemmas, frequencyThreshold);
+        if (filtered.isEmpty()) {
+            return;
+        }
+        filtered.sort(Comparator.comparingInt(Lemma::getFrequency));
+
+        List<Integer> lemmaIds = filtered.stream().map(Lemma::getId).toList();
+        try (Stream<Object[]> rows = indexSearchRepository.streamPageAbsRelevance(site.getId(), lemmaIds,
+                lemmaIds.size())) {
+            rows.forEach(row -> collector.offer(site.getId(), ((Number) row[0]).intValue(),
+                    ((Number) row[1]).doubleValue()));
+        }
+    }
+
+    /**
+     * Загружает леммы для сайта. Если хотя бы одной леммы нет в индексе сайта, возвращает пустой список.
+     *
+     * @param site {@link Site} сайт
+     * @param lemmaTexts {@link Collection}<{@link String}> тексты лемм
+     * @return {@link List}<{@link Lemma}> список лемм или пустой список
+     */
+    private List<Lemma> loadLemmasForSite(Site site, Collection<String> lemmaTexts) {
+        List<Lemma> lemmas = lemmaRepository.findBySiteAndLemmaIn(site, lemmaTexts);
+        if (lemmas.size() != lemmaTexts.size()) {
+            return List.of();
+        }
+        return lemmas;
+    }
+
+    /**
+     * Отбрасывает леммы, которые встречаются на слишком большом количестве страниц.
+     *
+     * @param lemmas {@link List}<{@link Lemma}> список лемм
+     * @param threshold максимальная допустимая частота
+     * @return {@link List}<{@link Lemma}> отфильтрованный список лемм
+     */
+    private List<Lemma> filterTooFrequentLemmas(List<Lemma> lemmas, int threshold) {
+        if (threshold <= 0) {
+            return new ArrayList<>(lemmas);
+        }
+        List<Lemma> result = new ArrayList<>();
+        for (Lemma lemma : lemmas) {
+            if (lemma.getFrequency() <= threshold) {
+                result.add(lemma);
+            }
+        }
+        return result;
+    }
+}
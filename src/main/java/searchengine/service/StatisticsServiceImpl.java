@@ -54,7 +54,7 @@ public class StatisticsServiceImpl implements StatisticsService {
             DetailedStatisticsItem item = new DetailedStatisticsItem();
             item.setName(siteConfig.getName());
             item.setUrl(siteConfig.getUrl());
-            Site site = siteRepository.findByUrl(siteConfig.getUrl()).orElse(null);
+            Site site = siteRepository.findLiveByUrl(siteConfig.getUrl()).orElse(null);
             if (site == null) {
                 item.setStatus(SiteStatus.FAILED.name());
                 item.setStatusTime(0L);
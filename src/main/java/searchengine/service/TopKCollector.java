@@ -0,0 +1,159 @@
+package searchengine.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Отбор {@code k} самых релевантных страниц без сортировки всех найденных.
+ *
+ * <p>Хранит не больше {@code k} страниц в куче, вершина которой — худшая из отобранных. Страница, которая хуже
+ * вершины заполненной кучи, только учитывается в общем количестве и максимальной релевантности, объект
+ * для неё не создаётся. Стоимость отбора — {@code O(n log k)} вместо {@code O(n log n)}.</p>
+ *
+ * <p>Порядок выдачи: по убыванию абсолютной релевантности, при равенстве — по возрастанию ID страницы и сайта.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+public class TopKCollector {
+
+    private static final Comparator<SearchHit> WORST_FIRST = Comparator
+            .comparingDouble(SearchHit::absRelevance)
+            .thenComparing(Comparator.comparingInt(SearchHit::pageId).reversed())
+            .thenComparing(Comparator.comparingInt(SearchHit::siteId).reversed());
+
+    private final int capacity;
+    private final PriorityQueue<SearchHit> heap;
+    private int count;
+    private double maxAbsRelevance;
+    private boolean complete = true;
+
+    /**
+     * Создаёт пустой отбор.
+     *
+     * @param capacity количество отбираемых страниц ({@code offset + limit})
+     */
+    public TopKCollector(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.heap = new PriorityQueue<>(Math.min(this.capacity, 1024) + 1, WORST_FIRST);
+    }
+
+    /**
+     * Учитывает найденную страницу.
+     *
+     * @param siteId ID сайта
+     * @param pageId ID страницы
+     * @param absRelevance абсолютная релевантность
+     */
+    public void offer(int siteId, int pageId, double absRelevance) {
+        count++;
+        if (count == 1 || absRelevance > maxAbsRelevance) {
+            maxAbsRelevance = absRelevance;
+        }
+        keep(siteId, pageId, absRelevance);
+    }
+
+    /**
+     * Добавляет результаты другого отбора (например, частичного отбора по одному сайту).
+     *
+     * @param other {@link TopKCollector} отбор, который нужно объединить с текущим
+     */
+    public void addAll(TopKCollector other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0 || other.maxAbsRelevance > maxAbsRelevance) {
+            maxAbsRelevance = other.maxAbsRelevance;
+        }
+        count += other.count;
+        for (SearchHit hit : other.heap) {
+            keep(hit.siteId(), hit.pageId(), hit.absRelevance());
+        }
+    }
+
+    /**
+     * Помещает страницу в кучу, если она входит в {@code capacity} лучших.
+     *
+     * @param siteId ID сайта
+     * @param pageId ID страницы
+     * @param absRelevance абсолютная релевантность
+     */
+    private void keep(int siteId, int pageId, double absRelevance) {
+        if (capacity == 0) {
+            return;
+        }
+        if (heap.size() == capacity && !isBetterThanWorst(siteId, pageId, absRelevance)) {
+            return;
+        }
+        heap.add(new SearchHit(siteId, pageId, absRelevance));
+        if (heap.size() > capacity) {
+            heap.poll();
+        }
+    }
+
+    /**
+     * Возвращает общее количество найденных страниц.
+     *
+     * @return количество страниц
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Возвращает максимальную абсолютную релевантность среди всех найденных страниц.
+     *
+     * @return максимальная релевантность ({@code 0}, если ничего не найдено)
+     */
+    public double maxAbsRelevance() {
+        return maxAbsRelevance;
+    }
+
+    /**
+     * Отмечает отбор как неполный: результаты части сайтов не получены (например, истёк срок поиска).
+     */
+    public void markIncomplete() {
+        complete = false;
+    }
+
+    /**
+     * Возвращает признак, что отбор содержит результаты всех сайтов.
+     *
+     * @return true, если отбор полный
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Возвращает отобранные страницы в порядке выдачи.
+     *
+     * @return {@link List}<{@link SearchHit}> не больше {@code capacity} страниц
+     */
+    public List<SearchHit> results() {
+        List<SearchHit> result = new ArrayList<>(heap);
+        result.sort(WORST_FIRST.reversed());
+        return result;
+    }
+
+    /**
+     * Проверяет, что страница лучше худшей из отобранных (вершины кучи).
+     *
+     * @param siteId ID сайта
+     * @param pageId ID страницы
+     * @param absRelevance абсолютная релевантность
+     * @return true, если страницу нужно поместить в кучу
+     */
+    private boolean isBetterThanWorst(int siteId, int pageId, double absRelevance) {
+        SearchHit worst = heap.peek();
+        int cmp = Double.compare(absRelevance, worst.absRelevance());
+        if (cmp != 0) {
+            return cmp > 0;
+        }
+        if (pageId != worst.pageId()) {
+            return pageId < worst.pageId();
+        }
+        return siteId < worst.siteId();
+    }
+}
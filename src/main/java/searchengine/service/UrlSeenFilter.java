@@ -0,0 +1,106 @@
+package searchengine.service;
+
+/**
+ * Фильтр Блума для URL, которые уже были поставлены в очередь обхода.
+ *
+ * <p>Занимает фиксированный объём памяти, рассчитанный по ожидаемому количеству URL и допустимой доле ложных
+ * срабатываний, и не растёт вместе с сайтом. Ложное срабатывание означает, что новая страница будет пропущена;
+ * ложно-отрицательных ответов фильтр не даёт. Класс не потокобезопасен.</p>
+ *
+ * @author Tseliar Vladimir
+ */
+public class UrlSeenFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Создаёт фильтр под заданное количество URL.
+     *
+     * @param expectedUrls ожидаемое количество URL
+     * @param falsePositiveRate допустимая доля ложных срабатываний (0..1)
+     */
+    public UrlSeenFilter(long expectedUrls, double falsePositiveRate) {
+        long n = Math.max(1, expectedUrls);
+        double p = Math.min(0.5d, Math.max(1e-9d, falsePositiveRate));
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, Math.min(m, (long) Integer.MAX_VALUE * 64));
+        this.bits = new long[(int) ((m + 63) / 64)];
+        this.bitCount = (long) bits.length * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    /**
+     * Добавляет URL в фильтр.
+     *
+     * @param url {@link String} нормализованный URL
+     * @return true, если URL раньше не встречался (с точностью до ложных срабатываний)
+     */
+    public boolean add(String url) {
+        long hash = hash64(url);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | (hash << 32);
+        boolean added = false;
+        for (int i = 0; i < hashCount; i++) {
+            long combined = h1 + i * h2;
+            long index = (combined & Long.MAX_VALUE) % bitCount;
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Проверяет, встречался ли URL.
+     *
+     * @param url {@link String} нормализованный URL
+     * @return true, если URL, вероятно, уже добавлен
+     */
+    public boolean mightContain(String url) {
+        long hash = hash64(url);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | (hash << 32);
+        for (int i = 0; i < hashCount; i++) {
+            long combined = h1 + i * h2;
+            long index = (combined & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает объём памяти, занимаемый битовым массивом.
+     *
+     * @return размер в байтах
+     */
+    public long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    /**
+     * Считает 64-битный хеш строки (FNV-1a по символам с финальным перемешиванием).
+     *
+     * @param value {@link String} строка
+     * @return хеш
+     */
+    private static long hash64(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}